@@ -2,11 +2,10 @@ package MarkcelloPlayer.BigBoard;
 
 import java.lang.IllegalStateException;
 import java.lang.IndexOutOfBoundsException;
-import java.util.Collections;
-import java.util.PriorityQueue;
 
 import mnkgame.MNKCellState;
 import mnkgame.MNKGameState;
+import mnkgame.Zobrist;
 import MarkcelloPlayer.IBoard;
 import MarkcelloPlayer.IHeuristicCell;
 import MarkcelloPlayer.IValue;
@@ -35,12 +34,37 @@ public class Board implements IBoard {
      * Heuristic cells di tutte le celle
      */
     public final HeuristicCell[] sortedAllCells;
+
+    /**
+     * Celle libere ordinate per il valore che hanno quando muove l'alleato o il nemico.
+     * Dopo ogni mossa vengono riordinate solo le celle a distanza minore di K
+     * sulle 4 linee, che sono le sole a cui cambia il valore.
+     */
+    private final CellHeap allyHeap;
+    private final CellHeap enemyHeap;
+    private final int[] topCells;  // buffer per gli indici letti dallo heap
+
+    /**
+     * Le celle il cui valore è cambiato e che non sono ancora state riordinate negli heap.
+     * Le mosse segnano solo le celle toccate, il lavoro sugli heap e la copia in
+     * sortedAllCells si fanno alla prima getGreatKCell, così le foglie non lo pagano mai.
+     */
+    private final int[] changedCells;
+    private final boolean[] isChanged;
+    private int changedCellsCount;
+    private boolean sortedDirty;
+
+    // conteggio delle celle nelle sliding window, per aggiornare i valori in O(K)
+    private final SlidingWindows windows;
     
 
     private final MNKCellState[] Player = {MNKCellState.P1, MNKCellState.P2};
     private int currentPlayer; // currentPlayer plays next move
     private MNKGameState gameState; // game state
 
+    private final Zobrist zobrist;
+    private long hash;  // chiave di Zobrist della posizione, aggiornata in markCell e unmarkCell
+
     private MNKCellState allyPlayer;  // alleato di sé stesso
     private MNKCellState enemyPlayer;
     
@@ -74,17 +98,27 @@ public class Board implements IBoard {
         this.N = N;
         this.K = K;
 
+        zobrist = new Zobrist(M, N);
+        hash = 0;
+
         sumAllyHeuristic = 0;
         sumEnemyHeuristic = 0;
 
         B = new HeuristicCell[M][N];
         allCells = new HeuristicCell[M * N];
         sortedAllCells = new HeuristicCell[40];
+        allyHeap = new CellHeap(M * N, sortedAllCells.length);
+        enemyHeap = new CellHeap(M * N, sortedAllCells.length);
+        topCells = new int[sortedAllCells.length];
+        changedCells = new int[M * N];
+        isChanged = new boolean[M * N];
+        changedCellsCount = 0;
         freeCellsCount = M * N;
         
 
         allyPlayer = playerCode;
         enemyPlayer = playerCode == MNKCellState.P1 ? MNKCellState.P2 : MNKCellState.P1;
+        windows = new SlidingWindows(B, M, N, K, allyPlayer);
         currentPlayer = 0;
         for(int i = 0; i < M; i++) {
             for(int j = 0; j < N; j++) {
@@ -99,6 +133,12 @@ public class Board implements IBoard {
                 initCellValue(i, j);
             }
         }
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                allyHeap.insert(i * N + j, B[i][j].valueWithAdj(true));
+                enemyHeap.insert(i * N + j, B[i][j].valueWithAdj(false));
+            }
+        }
         
         // prima mossa deve esse fatta sempre con le celle ordinate
         updateCellDataStruct();  // sort sortedall cells
@@ -107,35 +147,65 @@ public class Board implements IBoard {
     }
 
     public void setBranchingFactor(int branchingFactor) {
+        if (this.branchingFactor != branchingFactor)
+            sortedDirty = true;
         this.branchingFactor = branchingFactor;
     }
 
     /**
-     * Crea una copia delle celle disponibili e le sorta
+     * Copia in sortedAllCells le migliori branchingFactor celle disponibili, in ordine.
+     * Gli heap sono già aggiornati, quindi costa O(B log B)
      */
     public void updateCellDataStruct() {
+        for (int k = 0; k < changedCellsCount; k++) {
+            int id = changedCells[k];
+            HeuristicCell cell = B[id / N][id % N];
+            allyHeap.update(id, cell.valueWithAdj(true));
+            enemyHeap.update(id, cell.valueWithAdj(false));
+            isChanged[id] = false;
+        }
+        changedCellsCount = 0;
+        sortedDirty = false;
+
         int len = Math.min(freeCellsCount, branchingFactor);
         boolean isAllayPlayer = Player[currentPlayer] == allyPlayer;
-        PriorityQueue<HeuristicCell> pq = new PriorityQueue<HeuristicCell>(Math.max(len,1),Collections.reverseOrder()); 
-        for (int i = 0; i < freeCellsCount; i++) {
-            allCells[i].calcValueWithAdj(isAllayPlayer);
-            if(pq.size() < len) {
-                pq.add(allCells[i]);
-            } else if(pq.peek().compareTo(allCells[i]) > 0) {   // se il minimo è minore di allCells[i]
-                pq.poll();
-                pq.add(allCells[i]);
-            }
+        CellHeap heap = isAllayPlayer ? allyHeap : enemyHeap;
+        len = heap.top(topCells, len);
+        for (int k = 0; k < len; k++) {
+            HeuristicCell cell = B[topCells[k] / N][topCells[k] % N];
+            cell.calcValueWithAdj(isAllayPlayer);
+            sortedAllCells[k] = cell;
         }
-        int i = len - 1;
-        while(!pq.isEmpty()){
-            sortedAllCells[i] = pq.poll();
-            i--;
+    }
+
+    /**
+     * Segna da riordinare le celle il cui valore può essere cambiato dopo una mossa
+     * in (i, j): quelle a distanza minore di K sulle 4 linee e le adiacenti.
+     */
+    private void markChangedCells(int i, int j) {
+        int radius = Math.max(K - 1, 1);
+        for (int dir = 0; dir < 4; dir++) {
+            int jAdd = getHorizontalAdder(dir);
+            int iAdd = getVerticalAdder(dir);
+            for (int step = -radius; step <= radius; step++) {
+                int iIdx = i + step * iAdd;
+                int jIdx = j + step * jAdd;
+                if (step != 0 && isValidCell(iIdx, jIdx) && !isChanged[iIdx * N + jIdx]) {
+                    isChanged[iIdx * N + jIdx] = true;
+                    changedCells[changedCellsCount++] = iIdx * N + jIdx;
+                }
+            }
         }
     }
 
+    /**
+     * Le celle migliori vengono calcolate solo qui, alla prima richiesta dopo una mossa
+     */
     public IHeuristicCell getGreatKCell(int k) {
         if (k < 0 || k >= branchingFactor)
             return null;
+        if (sortedDirty)
+            updateCellDataStruct();
         return sortedAllCells[k];
     }
 
@@ -176,12 +246,16 @@ public class Board implements IBoard {
 
         B[i][j].state = Player[currentPlayer];
 
+        windows.updateCount(i, j, B[i][j].state, 1);
         updateCellValue(i, j);
         addAdjiacentCells(i, j, 1);
+        allyHeap.remove(i * N + j);
+        enemyHeap.remove(i * N + j);
+        markChangedCells(i, j);
         
+        hash ^= zobrist.key(i, j, currentPlayer);
         currentPlayer = 1 - currentPlayer;
-
-        updateCellDataStruct();
+        sortedDirty = true;
 
         return gameState;
     }
@@ -216,6 +290,8 @@ public class Board implements IBoard {
         HeuristicCell cell = allCells[freeCellsCount];
         
         // rollback della cella markata
+        hash ^= zobrist.key(cell.i, cell.j, cell.state);
+        windows.updateCount(cell.i, cell.j, cell.state, -1);
         allCells[freeCellsCount].state = MNKCellState.FREE;
         int oldIndex = allCells[freeCellsCount].index;
         swapAllCellsByIndex(oldIndex, freeCellsCount);
@@ -226,13 +302,17 @@ public class Board implements IBoard {
         gameState = MNKGameState.OPEN;
         updateCellValue(cell.i, cell.j);
         addAdjiacentCells(cell.i, cell.j, -1);
+        allyHeap.insert(cell.i * N + cell.j, cell.valueWithAdj(true));
+        enemyHeap.insert(cell.i * N + cell.j, cell.valueWithAdj(false));
+        markChangedCells(cell.i, cell.j);
         currentPlayer = 1 - currentPlayer;
-        updateCellDataStruct();
+        sortedDirty = true;
     }
 
 
     /**
-     * This should be O(K)
+     * Calcolo da zero del valore di una direzione, O(K).
+     * Dopo le mosse i valori sono aggiornati da {@link SlidingWindows}, che dà lo stesso risultato
      * 
      * @param lineCode 1 = horizontal, 2 = vertical, 3 = diagonal, 4 = anti-diagonal
      * @param state,   lo stato per cercare il valore (NON HA SENDO AVERE LO STATE
@@ -366,14 +446,12 @@ public class Board implements IBoard {
      * 
      * @param i,    j the cell index
      * @param state
-     *              Runs in O(K^2)
+     *              Runs in O(K) per direction
      */
     public void updateCellValue(int i, int j) {
         sumAllyHeuristic -= B[i][j].allyValue.getValue();
         sumEnemyHeuristic -= B[i][j].enemyValue.getValue();
         for (int dir = 0; dir < 4; dir++){
-            computeCellDirectionValue(i, j, dir, enemyPlayer);
-            computeCellDirectionValue(i, j, dir, allyPlayer);
             updateCellDirectionValue(i, j, dir);
         }
 
@@ -384,41 +462,34 @@ public class Board implements IBoard {
         sumEnemyHeuristic += B[i][j].enemyValue.getValue();
     }
 
+    /**
+     * Ricalcola la direzione dirCode di (i, j) e delle celle a distanza minore di K sulla sua linea,
+     * togliendo e rimettendo il loro valore dalle somme dell'euristica
+     */
     private void updateCellDirectionValue(int i, int j, int dirCode) {
         int jAdd = getHorizontalAdder(dirCode);
         int iAdd = getVerticalAdder(dirCode);
 
-        int left = 1, right = 1;
-        while (left < K && isValidCell(i - left * iAdd, j - left * jAdd)) {
-            int iIdx = i - left * iAdd;
-            int jIdx = j - left * jAdd;
-
-            sumAllyHeuristic -= B[iIdx][jIdx].allyValue.getValue();
-            sumEnemyHeuristic -= B[iIdx][jIdx].enemyValue.getValue();
-            computeCellDirectionValue(iIdx, jIdx, dirCode, allyPlayer);
-            computeCellDirectionValue(iIdx, jIdx, dirCode, enemyPlayer);
-            B[iIdx][jIdx].allyValue.updateValue();
-            B[iIdx][jIdx].enemyValue.updateValue();
-            sumAllyHeuristic += B[iIdx][jIdx].allyValue.getValue();
-            sumEnemyHeuristic += B[iIdx][jIdx].enemyValue.getValue();
-            
-            left++;
+        for (int step = -(K - 1); step < K; step++) {
+            int iIdx = i + step * iAdd;
+            int jIdx = j + step * jAdd;
+            if (step != 0 && isValidCell(iIdx, jIdx)) {
+                sumAllyHeuristic -= B[iIdx][jIdx].allyValue.getValue();
+                sumEnemyHeuristic -= B[iIdx][jIdx].enemyValue.getValue();
+            }
         }
 
-        while (right < K && isValidCell(i + right * iAdd, j + right * jAdd)) {
-            int iIdx = i + right * iAdd;
-            int jIdx = j + right * jAdd;
-
-            sumAllyHeuristic -= B[iIdx][jIdx].allyValue.getValue();
-            sumEnemyHeuristic -= B[iIdx][jIdx].enemyValue.getValue();
-            computeCellDirectionValue(iIdx, jIdx, dirCode, allyPlayer);
-            computeCellDirectionValue(iIdx, jIdx, dirCode, enemyPlayer);
-            B[iIdx][jIdx].allyValue.updateValue();
-            B[iIdx][jIdx].enemyValue.updateValue();
-            sumAllyHeuristic += B[iIdx][jIdx].allyValue.getValue();
-            sumEnemyHeuristic += B[iIdx][jIdx].enemyValue.getValue();
+        windows.updateLine(i, j, dirCode);
 
-            right++;
+        for (int step = -(K - 1); step < K; step++) {
+            int iIdx = i + step * iAdd;
+            int jIdx = j + step * jAdd;
+            if (step != 0 && isValidCell(iIdx, jIdx)) {
+                B[iIdx][jIdx].allyValue.updateValue();
+                B[iIdx][jIdx].enemyValue.updateValue();
+                sumAllyHeuristic += B[iIdx][jIdx].allyValue.getValue();
+                sumEnemyHeuristic += B[iIdx][jIdx].enemyValue.getValue();
+            }
         }
     }
 
@@ -454,11 +525,22 @@ public class Board implements IBoard {
 
 
     public void setCellState(int i, int j, MNKCellState state) {
+        hash ^= zobrist.key(i, j, B[i][j].state) ^ zobrist.key(i, j, state);
+        windows.updateCount(i, j, B[i][j].state, -1);
+        windows.updateCount(i, j, state, 1);
         B[i][j].state = state;
     }
 
+    /**
+     * @return la chiave di Zobrist della posizione attuale, O(1)
+     */
+    public long hash() {
+        return hash;
+    }
+
     public void setPlayer(MNKCellState player) {
         currentPlayer = player == MNKCellState.P1 ? 0 : 1;
+        sortedDirty = true;
     }
 
     private boolean isValidCell(int i, int j) {
@@ -506,7 +588,7 @@ public class Board implements IBoard {
         for (int i = 0; i < M; i++) {
             for (int j = 0; j < N; j++) {
                 if (withValue)
-                    System.out.print(B[i][j].getValueWithAdj() + " \t");
+                    System.out.print(B[i][j].valueWithAdj(Player[currentPlayer] == allyPlayer) + " \t");
                 else
                     System.out.print(B[i][j].getAdjents() + " \t");
             }
@@ -0,0 +1,182 @@
+package MarkcelloPlayer.BigBoard;
+
+/**
+ * Max-heap indicizzato delle celle libere, ordinato per punteggio e a parità
+ * per indice i * N + j decrescente (lo stesso ordine della compareTo di {@link HeuristicCell}).
+ * <p>
+ * Ogni cella è identificata dal suo indice, quindi inserimento, rimozione e
+ * aggiornamento del punteggio di una cella costano O(log MN). Le migliori k celle
+ * si leggono in O(k log k) con {@link #top(int[], int)} senza allocare memoria.
+ * </p>
+ */
+class CellHeap {
+    private final long[] key;   // key[id] = (punteggio << 32) | id
+    private final int[] heap;   // heap[h] = id della cella in posizione h
+    private final int[] pos;    // pos[id] = posizione nello heap, -1 se non presente
+    private int size;
+
+    // heap di supporto con le posizioni candidate, usato solo da top
+    private final int[] frontier;
+
+    /**
+     * @param capacity numero di celle della board
+     * @param maxTop   numero massimo di celle chieste a top
+     */
+    CellHeap(int capacity, int maxTop) {
+        key = new long[capacity];
+        heap = new int[capacity];
+        pos = new int[capacity];
+        frontier = new int[maxTop + 1];
+        size = 0;
+        for (int id = 0; id < capacity; id++)
+            pos[id] = -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int id) {
+        return pos[id] >= 0;
+    }
+
+    void insert(int id, int score) {
+        key[id] = keyOf(id, score);
+        heap[size] = id;
+        pos[id] = size;
+        siftUp(size++);
+    }
+
+    void remove(int id) {
+        int h = pos[id];
+        pos[id] = -1;
+        size--;
+        if (h == size)
+            return;
+
+        int last = heap[size];
+        heap[h] = last;
+        pos[last] = h;
+        siftUp(h);
+        siftDown(pos[last]);
+    }
+
+    /**
+     * Aggiorna il punteggio della cella, se è nello heap
+     */
+    void update(int id, int score) {
+        int h = pos[id];
+        if (h < 0)
+            return;
+
+        long newKey = keyOf(id, score);
+        long oldKey = key[id];
+        key[id] = newKey;
+        if (newKey > oldKey)
+            siftUp(h);
+        else if (newKey < oldKey)
+            siftDown(h);
+    }
+
+    /**
+     * Scrive in dst gli id delle k celle migliori, dalla migliore alla peggiore.
+     * Le posizioni candidate sono solo i figli delle celle già estratte, quindi
+     * basta un secondo heap di al massimo k + 1 posizioni.
+     *
+     * @return il numero di celle scritte
+     */
+    int top(int[] dst, int k) {
+        k = Math.min(Math.min(k, size), Math.min(dst.length, frontier.length - 1));
+        if (k <= 0)
+            return 0;
+
+        int frontierSize = 0;
+        frontier[frontierSize++] = 0;
+        for (int n = 0; n < k; n++) {
+            int h = frontier[0];
+            dst[n] = heap[h];
+
+            // toglie la radice del frontier e aggiunge i figli di h
+            frontier[0] = frontier[--frontierSize];
+            frontierDown(frontierSize);
+            for (int child = 2 * h + 1; child <= 2 * h + 2 && child < size; child++) {
+                frontier[frontierSize] = child;
+                frontierUp(frontierSize++);
+            }
+        }
+        return k;
+    }
+
+    private static long keyOf(int id, int score) {
+        return ((long) score << 32) | id;
+    }
+
+    private long keyAt(int h) {
+        return key[heap[h]];
+    }
+
+    private void siftUp(int h) {
+        int id = heap[h];
+        long k = key[id];
+        while (h > 0) {
+            int parent = (h - 1) >>> 1;
+            if (keyAt(parent) >= k)
+                break;
+            heap[h] = heap[parent];
+            pos[heap[h]] = h;
+            h = parent;
+        }
+        heap[h] = id;
+        pos[id] = h;
+    }
+
+    private void siftDown(int h) {
+        int id = heap[h];
+        long k = key[id];
+        while (true) {
+            int child = 2 * h + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && keyAt(child + 1) > keyAt(child))
+                child++;
+            if (keyAt(child) <= k)
+                break;
+            heap[h] = heap[child];
+            pos[heap[h]] = h;
+            h = child;
+        }
+        heap[h] = id;
+        pos[id] = h;
+    }
+
+    private void frontierUp(int f) {
+        int h = frontier[f];
+        while (f > 0) {
+            int parent = (f - 1) >>> 1;
+            if (keyAt(frontier[parent]) >= keyAt(h))
+                break;
+            frontier[f] = frontier[parent];
+            f = parent;
+        }
+        frontier[f] = h;
+    }
+
+    private void frontierDown(int frontierSize) {
+        if (frontierSize == 0)
+            return;
+        int f = 0;
+        int h = frontier[0];
+        while (true) {
+            int child = 2 * f + 1;
+            if (child >= frontierSize)
+                break;
+            if (child + 1 < frontierSize && keyAt(frontier[child + 1]) > keyAt(frontier[child]))
+                child++;
+            if (keyAt(frontier[child]) <= keyAt(h))
+                break;
+            frontier[f] = frontier[child];
+            f = child;
+        }
+        frontier[f] = h;
+    }
+}
@@ -45,14 +45,22 @@ public class HeuristicCell implements IHeuristicCell {
         return allyValue.getValue() + enemyValue.getValue();
     }
     public void calcValueWithAdj(boolean isAlly) {
+        adjValue = valueWithAdj(isAlly);
+    }
+
+    /**
+     * Il valore usato per ordinare le mosse quando muove l'alleato (isAlly) o il nemico
+     */
+    public int valueWithAdj(boolean isAlly) {
+        int value;
         if(isAlly && allyValue.getValue() >= DirectionValue.DOUBLEPLAY_VAL) {
-            adjValue=allyValue.getValue() *2 + enemyValue.getValue() ;
+            value=allyValue.getValue() *2 + enemyValue.getValue() ;
         }else if(!isAlly && enemyValue.getValue() >= DirectionValue.DOUBLEPLAY_VAL){
-            adjValue=allyValue.getValue() + enemyValue.getValue() *2 ;
+            value=allyValue.getValue() + enemyValue.getValue() *2 ;
         }else{
-            adjValue=allyValue.getValue() + enemyValue.getValue();
+            value=allyValue.getValue() + enemyValue.getValue();
         }
-        adjValue +=  numAdiacent * ADIACENT_MULT;
+        return value + numAdiacent * ADIACENT_MULT;
     }
 
     public int getValueWithAdj() {
@@ -74,7 +82,7 @@ public class HeuristicCell implements IHeuristicCell {
     }
 
     public MNKCell toMNKCell() {
-        return new MNKCell(i, j, state);
+        return MNKCell.valueOf(i, j, state);
     }
 
     @Override
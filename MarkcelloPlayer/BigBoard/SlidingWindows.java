@@ -0,0 +1,202 @@
+package MarkcelloPlayer.BigBoard;
+
+import mnkgame.MNKCellState;
+
+/**
+ * Aggiornamento dei {@link DirectionValue} in O(K) per direzione invece di O(K^2).
+ * <p>
+ * Per ogni sliding window di lunghezza K (identificata dalla direzione e dalla cella
+ * in cui inizia) si tiene il numero di celle di ciascun giocatore, aggiornato in O(K)
+ * a ogni mossa. Dopo una mossa in (i, j) le celle da ricalcolare in una direzione sono
+ * quelle a distanza minore di K sulla linea: scorrendole in ordine, le window che le
+ * contengono entrano ed escono una alla volta, quindi con una deque monotona si
+ * tengono il centro (la window con più celle proprie) e quante window lo raggiungono.
+ * </p>
+ * <p>
+ * Le window valide che contengono una cella libera sono consecutive (sono quelle senza
+ * celle avversarie), quindi la loro unione è un unico intervallo e le celle proprie
+ * si contano con una somma prefissa. Il risultato è lo stesso di
+ * {@link Board#computeCellDirectionValue(int, int, int, MNKCellState)}.
+ * </p>
+ */
+class SlidingWindows {
+    private static final int ALLY = 0;
+    private static final int ENEMY = 1;
+
+    private final int M;
+    private final int N;
+    private final int K;
+    private final HeuristicCell[][] B;
+    private final MNKCellState allyPlayer;
+
+    /**
+     * count[giocatore][direzione][i * N + j] è il numero di celle del giocatore nella
+     * window di quella direzione che inizia in (i, j). Le window che escono dalla
+     * board non vengono mai aggiornate né lette.
+     */
+    private final int[][][] count;
+
+    // buffer di updateLine, le window e le celle della linea sono al massimo 4K
+    private final int[] windowOwn;
+    private final int[] validPrefix;
+    private final int[] ownPrefix;
+    private final int[] deque;
+
+    SlidingWindows(HeuristicCell[][] B, int M, int N, int K, MNKCellState allyPlayer) {
+        this.B = B;
+        this.M = M;
+        this.N = N;
+        this.K = K;
+        this.allyPlayer = allyPlayer;
+
+        count = new int[2][4][M * N];
+        windowOwn = new int[4 * K];
+        validPrefix = new int[4 * K + 1];
+        ownPrefix = new int[4 * K + 1];
+        deque = new int[4 * K];
+    }
+
+    /**
+     * Aggiunge (delta = 1) o toglie (delta = -1) una cella di state alle window che la contengono
+     */
+    void updateCount(int i, int j, MNKCellState state, int delta) {
+        if (state == MNKCellState.FREE)
+            return;
+
+        int[][] playerCount = count[state == allyPlayer ? ALLY : ENEMY];
+        for (int dir = 0; dir < 4; dir++) {
+            int iAdd = getVerticalAdder(dir);
+            int jAdd = getHorizontalAdder(dir);
+            int idStep = iAdd * N + jAdd;
+            int from = Math.max(firstStep(i, j, iAdd, jAdd), -(K - 1));
+            int to = Math.min(lastStep(i, j, iAdd, jAdd) - K + 1, 0);
+            int id = i * N + j + from * idStep;
+            for (int s = from; s <= to; s++, id += idStep) {
+                playerCount[dir][id] += delta;
+            }
+        }
+    }
+
+    /**
+     * Ricalcola, per entrambi i giocatori, il DirectionValue della direzione dir
+     * di (i, j) e di tutte le celle a distanza minore di K sulla sua linea.
+     */
+    void updateLine(int i, int j, int dir) {
+        updateLine(i, j, dir, ALLY);
+        updateLine(i, j, dir, ENEMY);
+    }
+
+    private void updateLine(int i, int j, int dir, int player) {
+        int iAdd = getVerticalAdder(dir);
+        int jAdd = getHorizontalAdder(dir);
+        int idStep = iAdd * N + jAdd;
+        int first = firstStep(i, j, iAdd, jAdd);
+        int last = lastStep(i, j, iAdd, jAdd);
+        int[] own = count[player][dir];
+        int[] opponent = count[1 - player][dir];
+        MNKCellState ownState = player == ALLY ? allyPlayer
+                : allyPlayer == MNKCellState.P1 ? MNKCellState.P2 : MNKCellState.P1;
+
+        // celle da aggiornare [tLo, tHi], window che le contengono [sLo, sHi]
+        int tLo = Math.max(first, -(K - 1));
+        int tHi = Math.min(last, K - 1);
+        int sLo = Math.max(first, tLo - K + 1);
+        int sHi = Math.min(last - K + 1, tHi);
+
+        int base = i * N + j;
+        validPrefix[0] = 0;
+        for (int s = sLo; s <= sHi; s++) {
+            int id = base + s * idStep;
+            windowOwn[s - sLo] = own[id];
+            validPrefix[s - sLo + 1] = validPrefix[s - sLo] + (opponent[id] == 0 ? 1 : 0);
+        }
+
+        // celle proprie nell'intervallo coperto dalle window [sLo, sHi + K - 1]
+        ownPrefix[0] = 0;
+        for (int t = sLo; t <= sHi + K - 1; t++) {
+            ownPrefix[t - sLo + 1] = ownPrefix[t - sLo]
+                    + (B[i + t * iAdd][j + t * jAdd].state == ownState ? 1 : 0);
+        }
+
+        // deque delle window valide, con windowOwn non crescente dalla testa
+        int head = 0, tail = 0;
+        int numMaximum = 0;     // window in testa con lo stesso valore della testa
+        int lastValid = 0;      // ultima window valida entrata
+        int next = sLo;
+        for (int t = tLo; t <= tHi; t++) {
+            int lo = Math.max(t - K + 1, sLo);
+            int hi = Math.min(t, sHi);
+
+            for (; next <= hi; next++) {
+                int w = next - sLo;
+                if (validPrefix[w + 1] == validPrefix[w])
+                    continue;
+                lastValid = next;
+                while (tail > head && windowOwn[deque[tail - 1]] < windowOwn[w])
+                    tail--;
+                if (tail == head)
+                    numMaximum = 1;
+                else if (windowOwn[deque[head]] == windowOwn[w])
+                    numMaximum++;
+                deque[tail++] = w;
+            }
+            while (tail > head && deque[head] + sLo < lo) {
+                head++;
+                if (--numMaximum == 0 && tail > head) {
+                    // è uscito l'ultimo massimo, conta quelli del nuovo valore in testa
+                    int value = windowOwn[deque[head]];
+                    for (int d = head; d < tail && windowOwn[deque[d]] == value; d++)
+                        numMaximum++;
+                }
+            }
+
+            HeuristicCell cell = B[i + t * iAdd][j + t * jAdd];
+            DirectionValue dirValue = player == ALLY ? cell.allyValue.directions[dir]
+                    : cell.enemyValue.directions[dir];
+            int numValid = hi >= lo ? validPrefix[hi - sLo + 1] - validPrefix[lo - sLo] : 0;
+
+            if (cell.state != MNKCellState.FREE || numValid == 0) {
+                dirValue.setInvalidDirectionValue();
+            } else {
+                int firstValid = lastValid - numValid + 1;
+                dirValue.center = K - windowOwn[deque[head]];
+                dirValue.numSliding = numValid;
+                dirValue.numMaximumSliding = numMaximum;
+                dirValue.numMyCells = ownPrefix[lastValid + K - sLo] - ownPrefix[firstValid - sLo];
+            }
+            dirValue.updateDirectionValue();
+        }
+    }
+
+    // il minimo t per cui (i + t * iAdd, j + t * jAdd) è nella board
+    private int firstStep(int i, int j, int iAdd, int jAdd) {
+        int t = Integer.MIN_VALUE;
+        if (iAdd == 1)
+            t = Math.max(t, -i);
+        else if (iAdd == -1)
+            t = Math.max(t, i - (M - 1));
+        if (jAdd == 1)
+            t = Math.max(t, -j);
+        return t;
+    }
+
+    // il massimo t per cui (i + t * iAdd, j + t * jAdd) è nella board
+    private int lastStep(int i, int j, int iAdd, int jAdd) {
+        int t = Integer.MAX_VALUE;
+        if (iAdd == 1)
+            t = Math.min(t, M - 1 - i);
+        else if (iAdd == -1)
+            t = Math.min(t, i);
+        if (jAdd == 1)
+            t = Math.min(t, N - 1 - j);
+        return t;
+    }
+
+    private int getHorizontalAdder(int dirCode) {
+        return dirCode == 1 ? 0 : 1;
+    }
+
+    private int getVerticalAdder(int dirCode) {
+        return dirCode == 0 ? 0 : dirCode == 3 ? -1 : 1;
+    }
+}
@@ -0,0 +1,119 @@
+package MarkcelloPlayer.BigBoard;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestBoard {
+    private static final int[][] GAMES = {
+        {3, 3, 3},
+        {6, 7, 4},
+        {7, 7, 5},
+        {10, 10, 5},
+        {20, 20, 10},
+    };
+
+    // le migliori celle come le calcolava la vecchia updateCellDataStruct: tutte le libere sortate
+    private HeuristicCell[] bruteForceTop(Board board, int len) {
+        boolean isAlly = board.currentPlayer() == 0;  // l'alleato è P1
+        HeuristicCell[] free = Arrays.copyOf(board.allCells, board.freeCellsCount);
+        for (HeuristicCell cell : free)
+            cell.calcValueWithAdj(isAlly);
+        Arrays.sort(free);
+        return Arrays.copyOf(free, Math.min(len, free.length));
+    }
+
+    // getGreatKCell deve calcolare da sola le celle migliori dopo una mossa
+    private void checkTop(Board board, int len) {
+        HeuristicCell[] expected = bruteForceTop(board, len);
+        for (int k = 0; k < expected.length; k++) {
+            if (board.getGreatKCell(k) != expected[k])
+                throw new AssertionError("different cell in position " + k);
+        }
+    }
+
+    // i valori aggiornati in modo incrementale devono essere quelli calcolati da zero
+    private void checkDirectionValues(Board board) {
+        MNKCellState[] states = {MNKCellState.P1, MNKCellState.P2};
+        for (int i = 0; i < board.M; i++) {
+            for (int j = 0; j < board.N; j++) {
+                for (MNKCellState state : states) {
+                    Value value = (Value) board.getCellValue(i, j, state);
+                    for (int dir = 0; dir < 4; dir++) {
+                        String incremental = value.directions[dir].toString();
+                        int incrementalValue = value.directions[dir].getDirectionValue();
+                        board.computeCellDirectionValue(i, j, dir, state);
+                        if (!incremental.equals(value.directions[dir].toString())
+                                || incrementalValue != value.directions[dir].getDirectionValue())
+                            throw new AssertionError("cell " + i + "," + j + " direction " + dir + ": "
+                                    + incremental + " instead of " + value.directions[dir]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Sliding windows give the same direction values of the full computation")
+    public void testDirectionValues() {
+        Random rand = new Random(11);
+        for (int[] game : GAMES) {
+            int M = game[0], N = game[1], K = game[2];
+            for (int round = 0; round < 3; round++) {
+                Board board = new Board(M, N, K, round % 2 == 0 ? MNKCellState.P1 : MNKCellState.P2);
+                int played = 0;
+                while (board.gameState() == MNKGameState.OPEN) {
+                    int i = rand.nextInt(M), j = rand.nextInt(N);
+                    if (board.getState(i, j) != MNKCellState.FREE)
+                        continue;
+                    board.markCell(i, j);
+                    played++;
+                    if (played % 3 == 0 || M * N < 100)
+                        checkDirectionValues(board);
+                }
+                for (; played > 0; played--) {
+                    board.unmarkCell();
+                    if (played % 5 == 0)
+                        checkDirectionValues(board);
+                }
+                checkDirectionValues(board);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The best cells are the same of a full sort after every mark and unmark")
+    public void testSortedCells() {
+        Random rand = new Random(7);
+        for (int[] game : GAMES) {
+            int M = game[0], N = game[1], K = game[2];
+            for (int round = 0; round < 5; round++) {
+                Board board = new Board(M, N, K, MNKCellState.P1);
+                int len = 1 + rand.nextInt(20);
+                board.setBranchingFactor(len);
+                int played = 0;
+                while (board.gameState() == MNKGameState.OPEN) {
+                    int i = rand.nextInt(M), j = rand.nextInt(N);
+                    if (board.getState(i, j) != MNKCellState.FREE)
+                        continue;
+                    board.markCell(i, j);
+                    played++;
+                    checkTop(board, len);
+                    if (rand.nextInt(4) == 0 && board.gameState() == MNKGameState.OPEN) {
+                        board.unmarkCell();
+                        played--;
+                        checkTop(board, len);
+                    }
+                }
+                for (; played > 0; played--) {
+                    board.unmarkCell();
+                    checkTop(board, len);
+                }
+            }
+        }
+    }
+}
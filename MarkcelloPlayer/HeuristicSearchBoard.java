@@ -0,0 +1,79 @@
+package MarkcelloPlayer;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.parallel.SearchBoard;
+import MarkcelloPlayer.BigBoard.Board;
+
+/**
+ * {@link Board} per la ricerca parallela: le mosse sono le branchingFactor celle
+ * migliori secondo l'euristica, come in {@link LastPlayer}, e il valore è quello
+ * dell'euristica per il giocatore che deve muovere.
+ */
+public class HeuristicSearchBoard implements SearchBoard {
+    private final IBoard board;
+    private final MNKCellState allyPlayer;
+    private final int branchingFactor;
+    private final int[] history;  // mosse come i * N + j
+    private int movesCount;
+
+    public HeuristicSearchBoard(int M, int N, int K, MNKCellState allyPlayer, int branchingFactor) {
+        this.board = new Board(M, N, K, allyPlayer);
+        this.allyPlayer = allyPlayer;
+        this.branchingFactor = branchingFactor;
+        this.history = new int[M * N];
+        this.movesCount = 0;
+        board.setBranchingFactor(branchingFactor);
+    }
+
+    public IBoard getBoard() {
+        return board;
+    }
+
+    public int generateMoves(int[] moves, int offset) {
+        int len = Math.min(branchingFactor, board.getFreeCellsCount());
+        for (int k = 0; k < len; k++) {
+            IHeuristicCell cell = board.getGreatKCell(k);
+            moves[offset + k] = cell.getI() * board.getN() + cell.getJ();
+        }
+        return len;
+    }
+
+    public int maxMoves() {
+        return branchingFactor;
+    }
+
+    public MNKGameState playMove(int move) {
+        history[movesCount++] = move;
+        return board.markCell(move / board.getN(), move % board.getN());
+    }
+
+    public void undoMove() {
+        board.unmarkCell();
+        movesCount--;
+    }
+
+    public MNKGameState gameState() {
+        return board.gameState();
+    }
+
+    public int evaluate() {
+        return board.getValue(board.currentPlayer() == 0 ? MNKCellState.P1 : MNKCellState.P2);
+    }
+
+    public int movesCount() {
+        return movesCount;
+    }
+
+    public int getMove(int k) {
+        return history[k];
+    }
+
+    public SearchBoard copy() {
+        HeuristicSearchBoard copy = new HeuristicSearchBoard(board.getM(), board.getN(), board.getK(),
+                allyPlayer, branchingFactor);
+        for (int k = 0; k < movesCount; k++)
+            copy.playMove(history[k]);
+        return copy;
+    }
+}
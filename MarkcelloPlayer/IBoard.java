@@ -59,4 +59,9 @@ public interface IBoard {
     public void printHeuristics(boolean ally);
 
     public int getFreeCellsCount();
+
+    /**
+     * @return la chiave di Zobrist della posizione attuale
+     */
+    public long hash();
 }
@@ -1,200 +1,314 @@
 package MarkcelloPlayer;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mnkgame.MNKBudget;
 import mnkgame.MNKCell;
 import mnkgame.MNKCellState;
-import mnkgame.MNKGameState;
+import mnkgame.Symmetry;
+import mnkgame.book.OpeningBook;
 import MarkcelloPlayer.BigBoard.Board;
 
 public class LastPlayer implements mnkgame.MNKPlayer {
     private IBoard B;
-    private MNKGameState myWin;
     private MNKCellState myState;
-    private MNKCellState yourState;
-    private MNKGameState yourWin;
-    private MNKGameState gameState;
     private final int KINF = Integer.MAX_VALUE;
 
     private int BRANCHING_FACTOR = 7;
-    private int DEPTH_LIMIT = 10;
-    private int maxNumberOfMoves;
-    
-    // mosse massime per il tree attuale
-    private int maxMovesCurrentTree;
-    
-    // mosse del tree attuale
-    private int movesCurrentTree;
+    private int TIMEOUT;
+
+    // risultati delle ricerche precedenti, rimane valida fra un turno e l'altro
+    private TranspositionTable TT;
+    private final int TT_LOG2_SIZE = 20;
+
+    // ricerca delle vittorie forzate con sole minacce, prima dell'alfa beta
+    private ThreatSearch threats;
+    private final int THREAT_DEPTH = 21;
+    private final double THREAT_TIME = 10.0 / 100.0;
+
+    // libro delle aperture della configurazione, se c'è il file, con le chiavi canoniche della posizione
+    private OpeningBook book;
+    private Symmetry symmetry;
+    private int markedCount;
+
+    /**
+     * Le mosse della radice sono divise fra i thread, ognuno con il suo worker e la sua board.
+     * Il worker 0 usa B, le altre board sono copie tenute allineate in selectCell.
+     */
+    private final int threads;
+    private SearchWorker[] workers;
+    private ArrayBlockingQueue<SearchWorker> idleWorkers;
+    private ForkJoinPool pool;
+
+    // alpha della radice, condiviso così anche le mosse valutate in parallelo vengono potate
+    private AtomicInteger sharedAlpha;
+    private MNKCell bestCell;
+    private int bestIndex;
+
+    // stato dell'iterazione attuale: se il tempo è finito e se la prima mossa (la PV) è stata valutata del tutto
+    private volatile boolean iterationTimedOut;
+    private volatile boolean firstMoveCompleted;
 
     private final boolean DEBUG = false;
 
-    public LastPlayer() {}
+    public LastPlayer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads numero di thread per la ricerca, 1 per la ricerca sequenziale
+     */
+    public LastPlayer(int threads) {
+        this.threads = Math.max(1, threads);
+    }
 
     public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
-        long timeStart = System.currentTimeMillis();
         this.myState = first ? MNKCellState.P1 : MNKCellState.P2;
-        this.yourState = first ? MNKCellState.P2 : MNKCellState.P1;
-
+        this.TIMEOUT = timeout_in_secs;
         this.B = new Board(M, N, K, myState);
 
-        this.myWin = first ? MNKGameState.WINP1 : MNKGameState.WINP2;
-        this.yourWin = first ? MNKGameState.WINP2 : MNKGameState.WINP1;
+        // niente calibrazione: la profondità la decide l'iterative deepening in ogni turno
+        BRANCHING_FACTOR = branchingFactor(K);
+        this.TT = new TranspositionTable(TT_LOG2_SIZE);
+        this.threats = new ThreatSearch(M, N, K);
+        this.book = openBook(M, N, K);
+        this.symmetry = new Symmetry(M, N);
+        this.markedCount = 0;
+
+        // con il budget a nodi del tester la ricerca è seriale, così la partita si ripete uguale
+        int threads = MNKBudget.current().isNodeBudget() ? 1 : this.threads;
+        workers = new SearchWorker[threads];
+        idleWorkers = new ArrayBlockingQueue<SearchWorker>(threads);
+        // killer e history sono di ogni worker, la TT è condivisa
+        workers[0] = new SearchWorker(B, TT, new MoveOrdering(M * N, M * N + 1), myState, BRANCHING_FACTOR);
+        for (int t = 1; t < threads; t++)
+            workers[t] = new SearchWorker(new Board(M, N, K, myState), TT, new MoveOrdering(M * N, M * N + 1),
+                    myState, BRANCHING_FACTOR);
+        // il pool della partita prima si chiude, se no i suoi thread restano vivi fino al timeout di inattività
+        if (pool != null)
+            pool.shutdown();
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
 
-        TimingPlayer timing = new TimingPlayer(timeStart, timeout_in_secs, B);
-        timing.findBestTime();
-        
-        BRANCHING_FACTOR = timing.getBranchingFactor();
-        DEPTH_LIMIT = timing.getDephtLimit();
-        this.maxNumberOfMoves = timing.getMoves();
-        this.maxMovesCurrentTree = 0;
-        this.movesCurrentTree = 0;
+    /**
+     * @return il branching factor dell'alfa beta, più stretto sulle board grosse
+     */
+    static int branchingFactor(int K) {
+        return K == 10 ? 3 : 7;
     }
 
-    public int minPlayer(int depth, int alpha, int beta) {
-        if (depth == DEPTH_LIMIT) {
-            return B.getValue(yourState);
-        }else if(gameState == myWin){
-            return KINF - 1;
-        } else if (gameState == yourWin) {
-            return -KINF + 1;
-        }else if ( gameState  == MNKGameState.DRAW || B.isForcedDraw()){
-            return 0;
+    /**
+     * Il libro si cerca in <code>books/MxNxK.book</code>, la cartella si cambia con la
+     * proprietà <code>mnkgame.book.dir</code>
+     *
+     * @return il libro, null se non c'è
+     */
+    private static OpeningBook openBook(int M, int N, int K) {
+        Path file = Paths.get(System.getProperty("mnkgame.book.dir", "books"), M + "x" + N + "x" + K + ".book");
+        try {
+            return new OpeningBook(file, M, N, K);
+        } catch (IOException e) {
+            return null;
         }
-        
-        
-        int v = KINF;
-        
-        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
-        
-        for (int i = 0; i < len; i++) {
-            if (movesCurrentTree + depth >= maxMovesCurrentTree) {
-                break;
-            }
+    }
 
-            gameState = B.markCell(B.getGreatKCell(i));
-            int maxPlayerValue = maxPlayer(depth + 1, alpha, beta);
-            B.unmarkCell();
-            movesCurrentTree++;
-            
-            if (maxPlayerValue < v) {
-                v = maxPlayerValue;
-                beta = Math.min(beta, v);
-            }
+    /**
+     * @return la mossa del libro se la posizione è vinta o pari, NO_MOVE altrimenti
+     */
+    private int probeBook() {
+        if (book == null)
+            return TranspositionTable.NO_MOVE;
+        int entry = book.probe(symmetry.key());
+        if (entry == OpeningBook.NOT_FOUND || OpeningBook.value(entry) == OpeningBook.LOSS)
+            return TranspositionTable.NO_MOVE;
+
+        int move = symmetry.inverse(symmetry.keySymmetry(), OpeningBook.move(entry));
+        // le chiavi possono collidere, la mossa deve essere almeno libera
+        if (move >= B.getM() * B.getN() || B.getState(move / B.getN(), move % B.getN()) != MNKCellState.FREE)
+            return TranspositionTable.NO_MOVE;
+        return move;
+    }
 
-            if (v <= alpha)
-                return v;
-        }
-        
-        if(v == KINF){
-            return B.getValue(myState);
+    /**
+     * trova mossa migliore con alfa beta pruning in iterative deepening, una profondità
+     * alla volta finché non arriva il deadline
+     * @return
+     */
+    private MNKCell findBestMove(long deadline, MNKBudget budget) {
+        // al primo livello valuto quasi tutto
+
+        int len = Math.min(BRANCHING_FACTOR * 3, B.getFreeCellsCount());
+        B.setBranchingFactor(len);
+        B.updateCellDataStruct();
+        TT.newSearch();
+
+        // le mosse della radice si copiano, perché il worker 0 usa B durante la ricerca
+        int[] rootI = new int[len];
+        int[] rootJ = new int[len];
+        for (int i = 0; i < len; i++) {
+            IHeuristicCell currCell = B.getGreatKCell(i);
+            rootI[i] = currCell.getI();
+            rootJ[i] = currCell.getJ();
         }
-        return v;
-    }
 
-    private int maxPlayer(int depth, int alpha, int beta) {
-        if (depth == DEPTH_LIMIT) {
-            return B.getValue(myState);
-        } else if(gameState == myWin){
-            return KINF - 1;            
-        } else if (gameState == yourWin) {
-            return -KINF + 1;
-        } else if (gameState == MNKGameState.DRAW || B.isForcedDraw()) {
-            return 0;
+        // finché la posizione è simmetrica le mosse equivalenti si valutano una volta sola
+        if (symmetry.isSymmetric()) {
+            len = removeSymmetricMoves(rootI, rootJ);
+            rootI = Arrays.copyOf(rootI, len);
+            rootJ = Arrays.copyOf(rootJ, len);
         }
 
-        int v = -KINF;
-        
-        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
-        
-        for (int i = 0; i < len; i++) {
-            if (movesCurrentTree + depth >= maxMovesCurrentTree) {
+        for (SearchWorker worker : workers)
+            worker.startTurn(deadline, budget);
+
+        // se non finisce nemmeno la profondità 1 si gioca la migliore secondo l'euristica
+        MNKCell result = MNKCell.valueOf(rootI[0], rootJ[0], MNKCellState.FREE);
+        int maxDepth = B.getFreeCellsCount();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            searchIteration(rootI, rootJ, depth);
+
+            // di un'iterazione interrotta si tiene la mossa solo se è stata confrontata con la PV completa
+            if (iterationTimedOut) {
+                if (firstMoveCompleted && bestCell != null)
+                    result = bestCell;
+                // if (DEBUG) {
+                //     System.out.println("profondità completata: " + (depth - 1));
+                // }
                 break;
             }
+            result = bestCell;
 
-            gameState = B.markCell(B.getGreatKCell(i));
-            int minPlayerValue = minPlayer(depth + 1, alpha, beta);
-            B.unmarkCell();
-            
-            movesCurrentTree++;
-            
-
-            if (minPlayerValue > v) {
-                v = minPlayerValue;
-                alpha = Math.max(alpha, v);
-            }
+            // la mossa migliore diventa la prima della prossima iterazione
+            moveToFront(rootI, rootJ, bestIndex);
 
-            if (v >= beta)
-                return v;
+            // vittoria o sconfitta sicura, andare più a fondo non cambia niente
+            int value = sharedAlpha.get();
+            if (value == KINF - 1 || value == -KINF + 1)
+                break;
         }
 
-        if(v == -KINF) {
-            return B.getValue(myState);
+        return result;
+    }
+
+    /**
+     * Valuta tutte le mosse della radice fino a depth
+     */
+    private void searchIteration(int[] rootI, int[] rootJ, int depth) {
+        int len = rootI.length;
+        sharedAlpha = new AtomicInteger(-KINF);
+        bestCell = null;
+        bestIndex = len;
+        iterationTimedOut = false;
+        firstMoveCompleted = false;
+        for (SearchWorker worker : workers) {
+            worker.setDepthLimit(depth);
+            idleWorkers.add(worker);
         }
 
-        return v;
+        // la prima mossa (la PV dell'iterazione prima) si valuta da sola per avere subito un alpha,
+        // poi le altre usando tutti i thread
+        searchRootMove(rootI, rootJ, 0);
+
+        if (pool == null) {
+            for (int i = 1; i < len && !iterationTimedOut; i++)
+                searchRootMove(rootI, rootJ, i);
+        } else if (!iterationTimedOut) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(len);
+            for (int i = 1; i < len; i++) {
+                final int index = i;
+                tasks.add(ForkJoinTask.adapt(() -> searchRootMove(rootI, rootJ, index)));
+            }
+            for (ForkJoinTask<?> task : tasks)
+                pool.execute(task);
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
+        }
+        idleWorkers.clear();
     }
 
-  
-
     /**
-     * trova mossa migliore con alfa beta pruning
-     * @return
+     * Tiene una sola mossa per ogni classe di mosse equivalenti, la prima secondo l'euristica
+     *
+     * @return il numero di mosse rimaste, compattate all'inizio degli array
      */
-    private MNKCell findBestMove() {
-        int alpha = -KINF;
-        int beta = KINF;
-        int v = -KINF;
-
-        MNKCell cell = null;
+    private int removeSymmetricMoves(int[] rootI, int[] rootJ) {
+        int N = B.getN();
+        boolean[] seen = new boolean[B.getM() * N];
+        int len = 0;
+        for (int k = 0; k < rootI.length; k++) {
+            int representative = symmetry.representative(rootI[k] * N + rootJ[k]);
+            if (seen[representative])
+                continue;
+            seen[representative] = true;
+            rootI[len] = rootI[k];
+            rootJ[len] = rootJ[k];
+            len++;
+        }
+        return len;
+    }
 
-        // al primo livello valuto quasi tutto
+    private static void moveToFront(int[] rootI, int[] rootJ, int index) {
+        int i = rootI[index], j = rootJ[index];
+        for (int k = index; k > 0; k--) {
+            rootI[k] = rootI[k - 1];
+            rootJ[k] = rootJ[k - 1];
+        }
+        rootI[0] = i;
+        rootJ[0] = j;
+    }
 
-        int len = Math.min(BRANCHING_FACTOR * 3, B.getFreeCellsCount());
-        maxMovesCurrentTree = maxNumberOfMoves / 4;
-        B.setBranchingFactor(len);
-        B.updateCellDataStruct();
+    /**
+     * Valuta la mossa index della radice con un worker libero e aggiorna la mossa migliore
+     */
+    private void searchRootMove(int[] rootI, int[] rootJ, int index) {
+        if (iterationTimedOut)
+            return;
 
-        int toAddEachStep;
-        if (len <= 1)
-            toAddEachStep = maxNumberOfMoves;
-        else
-            toAddEachStep = (maxNumberOfMoves - maxMovesCurrentTree)/ (len - 1);
+        SearchWorker worker = idleWorkers.poll();
+        int alpha = sharedAlpha.get();
+        int minPlayerValue = worker.searchRootMove(rootI[index], rootJ[index], alpha, KINF);
+        boolean timedOut = worker.hasTimedOut();
+        idleWorkers.add(worker);
 
-        //if (DEBUG) {
-        //    System.out.println("maxMovesCurrentTree: " + maxNumberOfMoves);
-        //    System.out.println("toAddEachStep: " + toAddEachStep);
-        //}
+        // if (DEBUG) {
+        //     System.out.println("cella: " + rootI[index] + " " +  rootJ[index] + " valore: " + minPlayerValue);
+        // }
 
-        for (int i = 0; i < len; i++) {
-            movesCurrentTree = 0;
-            IHeuristicCell currCell = B.getGreatKCell(i);
-            gameState = B.markCell(currCell);
-            B.setBranchingFactor(BRANCHING_FACTOR);
-            int minPlayerValue = minPlayer(1, alpha, beta);
-            B.setBranchingFactor(len);
-            B.unmarkCell();
-
-            
-            // if (DEBUG) {
-            //     System.out.println("cella: " + currCell.getI() + " " +  currCell.getJ() + " valore: " + minPlayerValue);
-            //     System.out.format("usate %d mosse su %d\n", movesCurrentTree, maxMovesCurrentTree);
-            // }
-
-            if (minPlayerValue > v) {
-                v = minPlayerValue;
-                cell = currCell.toMNKCell();
-                alpha = Math.max(alpha, v);
+        // il valore di una ricerca interrotta non è affidabile
+        if (timedOut) {
+            iterationTimedOut = true;
+            return;
+        }
+        if (index == 0)
+            firstMoveCompleted = true;
+
+        synchronized (this) {
+            // a parità di valore vince la mossa con euristica migliore, ma solo se il valore è esatto
+            int best = sharedAlpha.get();
+            if (bestCell == null || minPlayerValue > best
+                    || (minPlayerValue == best && index < bestIndex && minPlayerValue > alpha)) {
+                bestCell = MNKCell.valueOf(rootI[index], rootJ[index], MNKCellState.FREE);
+                bestIndex = index;
+                sharedAlpha.set(Math.max(best, minPlayerValue));
             }
-            
-            // quelli rimasti nell'iterazione precendente + numero da aggiungere ogni step
-            
-            maxMovesCurrentTree = (maxMovesCurrentTree - movesCurrentTree) + toAddEachStep;
         }
-        return cell;
-    }    
+    }
 
     public MNKCell selectCell(MNKCell[] freeCells, MNKCell[] movedCells) {
+        MNKBudget budget = MNKBudget.current();
+        long startTime = budget.currentTimeMillis();
         if (movedCells.length > 0) {
             MNKCell c = movedCells[movedCells.length - 1]; // Recover the last move from MC
-            B.markCell(c.i, c.j); // Save the last move in the local MNKBoard
+            markCell(c.i, c.j); // Save the last move in the local MNKBoard
         }
 
         // if (DEBUG) {
@@ -203,12 +317,38 @@ public class LastPlayer implements mnkgame.MNKPlayer {
             // B.printHeuristics(false);
         // }
         
-        MNKCell bestCell = findBestMove();
-        B.markCell(bestCell.i, bestCell.j);
+        // posizione già risolta nel libro
+        int bookMove = probeBook();
+        if (bookMove != TranspositionTable.NO_MOVE) {
+            MNKCell bookCell = MNKCell.valueOf(bookMove / B.getN(), bookMove % B.getN(), MNKCellState.FREE);
+            markCell(bookCell.i, bookCell.j);
+            return bookCell;
+        }
+
+        // se c'è una sequenza di minacce vincente non serve l'alfa beta
+        int win = threats.findWin(THREAT_DEPTH, startTime + (long) (TIMEOUT * 1000 * THREAT_TIME), budget);
+        if (win != ThreatSearch.NO_MOVE) {
+            MNKCell winCell = MNKCell.valueOf(win / B.getN(), win % B.getN(), MNKCellState.FREE);
+            markCell(winCell.i, winCell.j);
+            return winCell;
+        }
+
+        long deadline = startTime + (long) (TIMEOUT * 1000 * (85.0 / 100.0));
+        MNKCell bestCell = findBestMove(deadline, budget);
+        markCell(bestCell.i, bestCell.j);
 
         return bestCell;
     }
 
+    // la mossa va fatta su tutte le board dei worker, su quella delle minacce e sulle chiavi del libro
+    private void markCell(int i, int j) {
+        for (SearchWorker worker : workers)
+            worker.getBoard().markCell(i, j);
+        threats.markCell(i, j);
+        symmetry.mark(i * B.getN() + j, markedCount & 1);
+        markedCount++;
+    }
+
     public String playerName() {
         return "MarkCello";
     }
@@ -0,0 +1,165 @@
+package MarkcelloPlayer;
+
+/**
+ * Ordinamento dei figli di un nodo dell'alfa beta, sopra l'ordine dato dall'euristica
+ * della board: prima la mossa della TT (o della PV), poi le mosse forzate (vittorie,
+ * blocchi e doppi giochi, nell'ordine dell'euristica), poi le due killer move del ply,
+ * poi le altre per valore di history, a parità nell'ordine dell'euristica.
+ * <p>
+ * Le killer sono le ultime due mosse che hanno causato un taglio allo stesso ply, la
+ * history somma depth^2 per ogni taglio di una cella, separata per i due giocatori
+ * (ply pari e dispari). Le mosse sono indici di cella <code>i * N + j</code>.
+ * Le mosse forzate non passano dietro alle killer: su board piccole e tattiche come
+ * 7x7x5 una killer davanti a un blocco obbligato fa crescere l'albero.
+ * </p>
+ * <p>
+ * Tiene anche le statistiche per misurare l'ordinamento: quanti tagli ci sono stati
+ * e quanti già alla prima mossa provata. Non è thread safe, ogni worker ha la sua.
+ * </p>
+ */
+public class MoveOrdering {
+    public static final int NO_MOVE = -1;
+
+    private static final int TT_SCORE = Integer.MAX_VALUE;
+    private static final int FORCED_SCORE = Integer.MAX_VALUE - 1;  // meno la posizione della mossa
+    private static final int KILLER_SCORE = Integer.MAX_VALUE - (1 << 16);
+    // sopra questo valore la history si dimezza, così resta sotto i punteggi delle killer
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    private final int[][] killers;  // [ply][2]
+    private final int[][] history;  // [ply & 1][cella]
+    private final boolean heuristics;
+    private int[] scores;
+
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    /**
+     * @param cells      numero di celle della board
+     * @param maxPly     ply massimo con le killer move, ai ply più profondi non si usano
+     * @param heuristics false per usare solo la mossa della TT, per confrontare l'ordinamento
+     */
+    public MoveOrdering(int cells, int maxPly, boolean heuristics) {
+        this.killers = new int[maxPly][2];
+        this.history = new int[2][cells];
+        this.heuristics = heuristics;
+        this.scores = new int[16];
+        for (int[] k : killers) {
+            k[0] = NO_MOVE;
+            k[1] = NO_MOVE;
+        }
+    }
+
+    public MoveOrdering(int cells, int maxPly) {
+        this(cells, maxPly, true);
+    }
+
+    /**
+     * Da chiamare a ogni turno: la radice scende di due ply (la nostra mossa e quella
+     * dell'avversario), quindi anche le killer, e la history vecchia conta la metà.
+     */
+    public void newSearch() {
+        for (int ply = 0; ply < killers.length; ply++) {
+            killers[ply][0] = ply + 2 < killers.length ? killers[ply + 2][0] : NO_MOVE;
+            killers[ply][1] = ply + 2 < killers.length ? killers[ply + 2][1] : NO_MOVE;
+        }
+        ageHistory();
+    }
+
+    /**
+     * Riordina sul posto le prime len mosse, che arrivano nell'ordine dell'euristica
+     *
+     * @param ttMove mossa della TT, NO_MOVE se non c'è
+     */
+    public void order(int ply, int ttMove, int[] moves, int len) {
+        order(ply, ttMove, moves, len, 0);
+    }
+
+    /**
+     * Come {@link #order(int, int, int[], int)}, ma le prime forced mosse sono forzate e
+     * restano subito dopo la mossa della TT, nel loro ordine
+     */
+    public void order(int ply, int ttMove, int[] moves, int len, int forced) {
+        if (scores.length < len)
+            scores = new int[Math.max(len, scores.length * 2)];
+
+        int[] side = history[ply & 1];
+        boolean hasKillers = heuristics && ply < killers.length;
+        for (int k = 0; k < len; k++) {
+            int move = moves[k];
+            if (move == ttMove)
+                scores[k] = TT_SCORE;
+            else if (k < forced)
+                scores[k] = FORCED_SCORE - k;
+            else if (hasKillers && move == killers[ply][0])
+                scores[k] = KILLER_SCORE;
+            else if (hasKillers && move == killers[ply][1])
+                scores[k] = KILLER_SCORE - 1;
+            else
+                scores[k] = heuristics ? side[move] : 0;
+        }
+
+        // insertion sort stabile, le mosse sono poche e spesso già in ordine
+        for (int k = 1; k < len; k++) {
+            int move = moves[k];
+            int score = scores[k];
+            int h = k - 1;
+            while (h >= 0 && scores[h] < score) {
+                moves[h + 1] = moves[h];
+                scores[h + 1] = scores[h];
+                h--;
+            }
+            moves[h + 1] = move;
+            scores[h + 1] = score;
+        }
+    }
+
+    /**
+     * Da chiamare quando la mossa in posizione index causa un taglio
+     *
+     * @param remainingDepth profondità che mancava al limite, i tagli in alto contano di più
+     */
+    public void cutoff(int ply, int move, int index, int remainingDepth) {
+        cutoffs++;
+        if (index == 0)
+            firstMoveCutoffs++;
+        if (!heuristics)
+            return;
+
+        if (ply < killers.length && killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        int[] side = history[ply & 1];
+        side[move] += remainingDepth * remainingDepth;
+        if (side[move] > HISTORY_LIMIT)
+            ageHistory();
+    }
+
+    private void ageHistory() {
+        for (int[] side : history)
+            for (int c = 0; c < side.length; c++)
+                side[c] >>= 1;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * @return frazione dei tagli avvenuti alla prima mossa provata, 0 se non ci sono stati tagli
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    public void resetStats() {
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+}
@@ -0,0 +1,94 @@
+package MarkcelloPlayer;
+
+import java.util.Random;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKCellState;
+import MarkcelloPlayer.BigBoard.Board;
+
+/**
+ * Confronta l'alfa beta di {@link LastPlayer} con solo la mossa della TT in testa e con
+ * anche killer move e history ({@link MoveOrdering}): nodi visitati per arrivare a ogni
+ * profondità dell'iterative deepening e frazione dei tagli avvenuti alla prima mossa.
+ * <p>
+ * Uso: <code>java MarkcelloPlayer.OrderingBenchmark</code>
+ * </p>
+ */
+public class OrderingBenchmark {
+    // M, N, K, profondità massima
+    private static final int[][] GAMES = {
+        {7, 7, 5, 8},
+        {10, 10, 5, 8},
+        {50, 50, 10, 10},
+    };
+    private static final int OPENING_MOVES = 6;
+    private static final int KINF = Integer.MAX_VALUE;
+
+    public static void main(String[] args) {
+        for (int[] game : GAMES) {
+            int M = game[0], N = game[1], K = game[2], depth = game[3];
+            System.out.printf("%n%dx%dx%d, branching factor %d%n", M, N, K, LastPlayer.branchingFactor(K));
+            run(M, N, K, depth, false);
+            run(M, N, K, depth, true);
+        }
+    }
+
+    private static void run(int M, int N, int K, int maxDepth, boolean heuristics) {
+        Board board = new Board(M, N, K, MNKCellState.P1);
+        playOpening(board);
+
+        int branchingFactor = LastPlayer.branchingFactor(K);
+        MoveOrdering ordering = new MoveOrdering(M * N, M * N + 1, heuristics);
+        SearchWorker worker = new SearchWorker(board, new TranspositionTable(20), ordering,
+                MNKCellState.P1, branchingFactor);
+        worker.startTurn(Long.MAX_VALUE, MNKBudget.current());
+
+        int len = Math.min(branchingFactor * 3, board.getFreeCellsCount());
+        board.setBranchingFactor(len);
+        int[] rootI = new int[len];
+        int[] rootJ = new int[len];
+        for (int i = 0; i < len; i++) {
+            IHeuristicCell cell = board.getGreatKCell(i);
+            rootI[i] = cell.getI();
+            rootJ[i] = cell.getJ();
+        }
+
+        StringBuilder nodes = new StringBuilder();
+        long start = System.nanoTime();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            worker.setDepthLimit(depth);
+            int alpha = -KINF;
+            int best = 0;
+            for (int i = 0; i < len; i++) {
+                int value = worker.searchRootMove(rootI[i], rootJ[i], alpha, KINF);
+                if (value > alpha) {
+                    alpha = value;
+                    best = i;
+                }
+            }
+            swap(rootI, 0, best);
+            swap(rootJ, 0, best);
+            nodes.append(String.format(" %d:%d", depth, worker.getNodes()));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("  %-16s tagli alla prima mossa %5.1f%%, %.2fs, nodi per profondità%s%n",
+                heuristics ? "TT+killer+history" : "solo TT", 100 * ordering.getFirstMoveCutoffRate(),
+                seconds, nodes);
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    // sempre le stesse mosse fra le prime dell'euristica, così le due prove partono dalla stessa posizione
+    private static void playOpening(Board board) {
+        Random rand = new Random(1);
+        for (int k = 0; k < OPENING_MOVES; k++) {
+            IHeuristicCell cell = board.getGreatKCell(rand.nextInt(3));
+            board.markCell(cell.getI(), cell.getJ());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package MarkcelloPlayer;
+
+import java.util.Random;
+
+import mnkgame.MNKCellState;
+import mnkgame.cboard.CSearchBoard;
+import mnkgame.parallel.ParallelSearch;
+import mnkgame.parallel.SearchBoard;
+
+/**
+ * Misura lo speedup di {@link ParallelSearch} al variare dei thread: nodi al secondo e
+ * tempo per arrivare a ogni profondità, sulla board euristica di LastPlayer e sulla CBoard.
+ * <p>
+ * Uso: <code>java MarkcelloPlayer.ParallelBenchmark [thread...]</code>, di default
+ * 1, 2, 4, ... fino al numero di core.
+ * </p>
+ */
+public class ParallelBenchmark {
+    // M, N, K, profondità con la board euristica, branching factor, profondità con la CBoard
+    private static final int[][] GAMES = {
+        {7, 7, 5, 9, 7, 4},
+        {10, 10, 5, 9, 7, 3},
+        {50, 50, 10, 8, 3, 2},
+    };
+    private static final int OPENING_MOVES = 6;
+
+    public static void main(String[] args) {
+        int[] threads;
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int k = 0; k < args.length; k++)
+                threads[k] = Integer.parseInt(args[k]);
+        } else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int count = 1;
+            while ((1 << count) <= cores)
+                count++;
+            threads = new int[count];
+            for (int k = 0; k < count; k++)
+                threads[k] = Math.min(1 << k, cores);
+        }
+
+        System.out.println("core disponibili: " + Runtime.getRuntime().availableProcessors());
+        for (int[] game : GAMES) {
+            int M = game[0], N = game[1], K = game[2];
+            System.out.printf("%n%dx%dx%d, board euristica (profondità %d, branching factor %d)%n",
+                    M, N, K, game[3], game[4]);
+            run(new HeuristicSearchBoard(M, N, K, MNKCellState.P1, game[4]), game[3], threads);
+            System.out.printf("%dx%dx%d, CBoard (profondità %d)%n", M, N, K, game[5]);
+            run(new CSearchBoard(M, N, K), game[5], threads);
+        }
+    }
+
+    private static void run(SearchBoard board, int depth, int[] threads) {
+        playOpening(board);
+
+        double baseTime = 0;
+        for (int t : threads) {
+            ParallelSearch search = new ParallelSearch(t);
+            search.search(board, depth);  // riscaldamento della JIT e creazione delle copie
+
+            long start = System.nanoTime();
+            int move = search.search(board, depth);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (t == threads[0])
+                baseTime = seconds;
+
+            StringBuilder times = new StringBuilder();
+            long[] timeToDepth = search.getTimeToDepth();
+            for (int d = 1; d < timeToDepth.length; d++)
+                times.append(String.format(" %d:%.0fms", d, timeToDepth[d] / 1e6));
+
+            System.out.printf("  thread %2d: %8.0f nodi/s, %10d nodi, speedup %.2f, mossa %d, tempo per profondità%s%n",
+                    t, search.getNodes() / seconds, search.getNodes(), baseTime / seconds, move, times);
+            search.shutdown();
+        }
+    }
+
+    // sempre le stesse mosse fra le prime generate, così tutte le prove partono dalla stessa posizione
+    private static void playOpening(SearchBoard board) {
+        Random rand = new Random(1);
+        int[] moves = new int[board.maxMoves() + 1];
+        for (int k = 0; k < OPENING_MOVES; k++) {
+            int n = board.generateMoves(moves, 0);
+            board.playMove(moves[rand.nextInt(Math.min(n, 3))]);
+        }
+    }
+}
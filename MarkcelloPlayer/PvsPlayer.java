@@ -0,0 +1,62 @@
+package MarkcelloPlayer;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKCell;
+import mnkgame.MNKCellState;
+import mnkgame.parallel.ParallelSearch;
+
+/**
+ * Variante di {@link LastPlayer} che usa la ricerca parallela {@link ParallelSearch}
+ * (PVS con Young Brothers Wait) sulla stessa board e con lo stesso branching factor,
+ * anche lei in iterative deepening fino al timeout.
+ */
+public class PvsPlayer implements mnkgame.MNKPlayer {
+    private HeuristicSearchBoard B;
+    private ParallelSearch search;
+    private int DEPTH_LIMIT;
+    private int TIMEOUT;
+    private final int threads;
+
+    public PvsPlayer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads numero di thread della ricerca
+     */
+    public PvsPlayer(int threads) {
+        this.threads = threads;
+    }
+
+    public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
+        MNKCellState myState = first ? MNKCellState.P1 : MNKCellState.P2;
+
+        B = new HeuristicSearchBoard(M, N, K, myState, LastPlayer.branchingFactor(K));
+        DEPTH_LIMIT = M * N;
+        TIMEOUT = timeout_in_secs;
+        if (search != null)
+            search.shutdown();  // quella della partita prima
+        // con il budget a nodi del tester la ricerca è seriale, così la partita si ripete uguale
+        search = new ParallelSearch(MNKBudget.current().isNodeBudget() ? 1 : threads);
+    }
+
+    public MNKCell selectCell(MNKCell[] freeCells, MNKCell[] movedCells) {
+        MNKBudget budget = MNKBudget.current();
+        long startTime = budget.currentTimeMillis();
+        int N = B.getBoard().getN();
+        if (movedCells.length > 0) {
+            MNKCell c = movedCells[movedCells.length - 1]; // Recover the last move from MC
+            B.playMove(c.i * N + c.j); // Save the last move in the local MNKBoard
+        }
+
+        long deadline = startTime + (long) (TIMEOUT * 1000 * (85.0 / 100.0));
+        int move = search.searchIterative(B, DEPTH_LIMIT, deadline, budget);
+
+        B.playMove(move);
+        return MNKCell.valueOf(move / N, move % N, MNKCellState.FREE);
+    }
+
+    public String playerName() {
+        return "MarkCelloPVS";
+    }
+}
@@ -0,0 +1,320 @@
+package MarkcelloPlayer;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+
+/**
+ * Alpha beta di {@link LastPlayer} su una sola board.
+ * <p>
+ * Ogni thread della ricerca parallela ha il suo worker con la sua copia della board,
+ * tenuta allineata con le mosse della partita. La tabella delle trasposizioni
+ * invece è condivisa. La ricerca si ferma da sola quando passa il deadline del turno.
+ * </p>
+ */
+class SearchWorker {
+    private final IBoard B;
+    private final TranspositionTable TT;
+    private final MoveOrdering ordering;
+    private final MNKGameState myWin;
+    private final MNKGameState yourWin;
+    private final MNKCellState myState;
+    private final MNKCellState yourState;
+    private MNKGameState gameState;
+    private static final int KINF = Integer.MAX_VALUE;
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private int BRANCHING_FACTOR;
+    private int DEPTH_LIMIT;
+
+    // istante in cui fermarsi e nodi visitati, il tempo si controlla ogni TIME_CHECK_MASK + 1 nodi
+    private long deadline;
+    private long nodes;
+    private static final int TIME_CHECK_MASK = 255;
+    private MNKBudget budget;  // orologio del turno, a cui si contano i nodi
+
+    // true se il tempo è finito, da lì in poi i valori sono parziali
+    private boolean timedOut;
+
+    // figli di ogni nodo aperto, uno per profondità
+    private final int[][] moveBuffer;
+
+    SearchWorker(IBoard board, TranspositionTable TT, MoveOrdering ordering, MNKCellState myState, int branchingFactor) {
+        this.B = board;
+        this.TT = TT;
+        this.ordering = ordering;
+        this.myState = myState;
+        this.yourState = myState == MNKCellState.P1 ? MNKCellState.P2 : MNKCellState.P1;
+        this.myWin = myState == MNKCellState.P1 ? MNKGameState.WINP1 : MNKGameState.WINP2;
+        this.yourWin = myState == MNKCellState.P1 ? MNKGameState.WINP2 : MNKGameState.WINP1;
+        this.BRANCHING_FACTOR = branchingFactor;
+        this.moveBuffer = new int[board.getM() * board.getN() + 1][branchingFactor];
+    }
+
+    IBoard getBoard() {
+        return B;
+    }
+
+    MoveOrdering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * @return figli visitati da quando è stato creato il worker
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Da chiamare all'inizio di ogni turno
+     *
+     * @param deadline istante (come budget.currentTimeMillis) in cui la ricerca deve fermarsi
+     * @param budget   l'orologio del turno
+     */
+    void startTurn(long deadline, MNKBudget budget) {
+        this.deadline = deadline;
+        this.budget = budget;
+        this.timedOut = false;
+        ordering.newSearch();
+    }
+
+    /**
+     * @param depthLimit profondità dell'iterazione attuale, contando la mossa della radice
+     */
+    void setDepthLimit(int depthLimit) {
+        this.DEPTH_LIMIT = depthLimit;
+    }
+
+    /**
+     * @return true se il tempo del turno è finito, il valore dell'ultima searchRootMove non è valido
+     */
+    boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    private boolean isTimeUp() {
+        if (!timedOut && (++nodes & TIME_CHECK_MASK) == 0) {
+            budget.spend(TIME_CHECK_MASK + 1);
+            timedOut = budget.currentTimeMillis() > deadline;
+        }
+        return timedOut;
+    }
+
+    /**
+     * Valuta una mossa della radice con alfa beta fino alla profondità attuale
+     *
+     * @return il valore della mossa, non valido se nel frattempo è finito il tempo
+     */
+    int searchRootMove(int i, int j, int alpha, int beta) {
+        int len = Math.min(BRANCHING_FACTOR * 3, B.getFreeCellsCount());
+        gameState = B.markCell(i, j);
+        B.setBranchingFactor(BRANCHING_FACTOR);
+        int minPlayerValue = minPlayer(1, alpha, beta);
+        B.setBranchingFactor(len);
+        B.unmarkCell();
+
+        return minPlayerValue;
+    }
+
+    int minPlayer(int depth, int alpha, int beta) {
+        // la partita finita si riconosce anche all'ultimo livello, prima dell'euristica
+        if(gameState == myWin){
+            return KINF - 1;
+        } else if (gameState == yourWin) {
+            return -KINF + 1;
+        }else if ( gameState  == MNKGameState.DRAW || B.isForcedDraw()){
+            return 0;
+        } else if (depth == DEPTH_LIMIT) {
+            return B.getValue(yourState);
+        }
+
+        long key = B.hash();
+        long entry = TT.probe(key);
+        int ttValue = probeValue(entry, DEPTH_LIMIT - depth, alpha, beta);
+        if (ttValue != NO_VALUE)
+            return ttValue;
+        int ttMove = getTTMove(entry);
+
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        int v = KINF;
+        int bestMove = TranspositionTable.NO_MOVE;
+
+        int[] moves = moveBuffer[depth];
+        int len = generateMoves(depth, ttMove);
+
+        for (int i = 0; i < len; i++) {
+            int move = moves[i];
+            if (isTimeUp())
+                break;
+
+            gameState = B.markCell(move / B.getN(), move % B.getN());
+            int maxPlayerValue = maxPlayer(depth + 1, alpha, beta);
+            B.unmarkCell();
+
+            if (maxPlayerValue < v) {
+                v = maxPlayerValue;
+                bestMove = move;
+                beta = Math.min(beta, v);
+            }
+
+            if (v <= alpha) {
+                ordering.cutoff(depth, move, i, DEPTH_LIMIT - depth);
+                break;
+            }
+        }
+
+        if(v == KINF){
+            return B.getValue(myState);
+        }
+        storeValue(key, v, DEPTH_LIMIT - depth, alphaOrig, betaOrig, bestMove);
+        return v;
+    }
+
+    private int maxPlayer(int depth, int alpha, int beta) {
+        if(gameState == myWin){
+            return KINF - 1;
+        } else if (gameState == yourWin) {
+            return -KINF + 1;
+        } else if (gameState == MNKGameState.DRAW || B.isForcedDraw()) {
+            return 0;
+        } else if (depth == DEPTH_LIMIT) {
+            return B.getValue(myState);
+        }
+
+        long key = B.hash();
+        long entry = TT.probe(key);
+        int ttValue = probeValue(entry, DEPTH_LIMIT - depth, alpha, beta);
+        if (ttValue != NO_VALUE)
+            return ttValue;
+        int ttMove = getTTMove(entry);
+
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        int v = -KINF;
+        int bestMove = TranspositionTable.NO_MOVE;
+
+        int[] moves = moveBuffer[depth];
+        int len = generateMoves(depth, ttMove);
+
+        for (int i = 0; i < len; i++) {
+            int move = moves[i];
+            if (isTimeUp())
+                break;
+
+            gameState = B.markCell(move / B.getN(), move % B.getN());
+            int minPlayerValue = minPlayer(depth + 1, alpha, beta);
+            B.unmarkCell();
+
+            if (minPlayerValue > v) {
+                v = minPlayerValue;
+                bestMove = move;
+                alpha = Math.max(alpha, v);
+            }
+
+            if (v >= beta) {
+                ordering.cutoff(depth, move, i, DEPTH_LIMIT - depth);
+                break;
+            }
+        }
+
+        if(v == -KINF) {
+            return B.getValue(myState);
+        }
+
+        storeValue(key, v, DEPTH_LIMIT - depth, alphaOrig, betaOrig, bestMove);
+        return v;
+    }
+
+    private int cellIndex(IHeuristicCell cell) {
+        return cell.getI() * B.getN() + cell.getJ();
+    }
+
+    /**
+     * Mette in moveBuffer[depth] le celle migliori secondo l'euristica, ordinate da
+     * {@link MoveOrdering}. La mossa della TT prende il posto dell'ultima se non c'è già,
+     * le mosse forzate vanno prima delle altre.
+     *
+     * @return numero di mosse generate
+     */
+    private int generateMoves(int depth, int ttMove) {
+        int[] moves = moveBuffer[depth];
+        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
+        int count = 0;
+        if (ttMove != TranspositionTable.NO_MOVE)
+            moves[count++] = ttMove;
+        int forced = count;
+        for (int i = 0; i < len && count < len; i++) {
+            IHeuristicCell cell = B.getGreatKCell(i);
+            int move = cellIndex(cell);
+            if (move == ttMove)
+                continue;
+            moves[count++] = move;
+            if (isForced(cell)) {
+                // dietro alle altre forzate, nell'ordine dell'euristica
+                for (int k = count - 1; k > forced; k--)
+                    moves[k] = moves[k - 1];
+                moves[forced++] = move;
+            }
+        }
+        ordering.order(depth, ttMove, moves, count, forced);
+        return count;
+    }
+
+    /**
+     * @return true se la cella vince o blocca una vittoria, o fa un doppio gioco per uno dei due
+     */
+    private boolean isForced(IHeuristicCell cell) {
+        IValue mine = B.getCellValue(cell.getI(), cell.getJ(), myState);
+        IValue yours = B.getCellValue(cell.getI(), cell.getJ(), yourState);
+        return mine.hasOneLeft() || mine.isDoublePlay() || yours.hasOneLeft() || yours.isDoublePlay();
+    }
+
+    /**
+     * @return il valore salvato nella TT se basta per chiudere il nodo, NO_VALUE altrimenti
+     */
+    private int probeValue(long entry, int remainingDepth, int alpha, int beta) {
+        if (entry == 0 || TranspositionTable.depth(entry) < remainingDepth)
+            return NO_VALUE;
+
+        int value = TranspositionTable.value(entry);
+        int flag = TranspositionTable.flag(entry);
+        if (flag == TranspositionTable.EXACT
+                || (flag == TranspositionTable.LOWER && value >= beta)
+                || (flag == TranspositionTable.UPPER && value <= alpha))
+            return value;
+        return NO_VALUE;
+    }
+
+    /**
+     * @return la mossa migliore salvata nella TT, solo se è ancora giocabile (le chiavi possono collidere)
+     */
+    private int getTTMove(long entry) {
+        if (entry == 0)
+            return TranspositionTable.NO_MOVE;
+        int move = TranspositionTable.move(entry);
+        if (move < 0 || move >= B.getM() * B.getN()
+                || B.getState(move / B.getN(), move % B.getN()) != MNKCellState.FREE)
+            return TranspositionTable.NO_MOVE;
+        return move;
+    }
+
+    /**
+     * Salva il valore solo se la ricerca del nodo non è stata interrotta dal tempo,
+     * altrimenti il valore non sarebbe quello della profondità indicata.
+     */
+    private void storeValue(long key, int v, int remainingDepth, int alphaOrig, int betaOrig, int bestMove) {
+        if (timedOut)
+            return;
+
+        int flag;
+        if (v <= alphaOrig)
+            flag = TranspositionTable.UPPER;
+        else if (v >= betaOrig)
+            flag = TranspositionTable.LOWER;
+        else
+            flag = TranspositionTable.EXACT;
+        TT.store(key, v, remainingDepth, flag, bestMove);
+    }
+}
@@ -0,0 +1,97 @@
+package MarkcelloPlayer;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import mnkgame.MNKGameState;
+import mnkgame.bitboard.BitBoard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestThreatSearch {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private ThreatSearch play(int M, int N, int K, int[][] moves) {
+        ThreatSearch search = new ThreatSearch(M, N, K);
+        for (int[] move : moves)
+            search.markCell(move[0], move[1]);
+        return search;
+    }
+
+    @Test
+    @DisplayName("Immediate win and forced block")
+    public void testImmediate() {
+        // X in 0,0 e 0,1, O in 1,0 e 1,1: X vince in 0,2
+        ThreatSearch search = play(3, 3, 3, new int[][] {{0, 0}, {1, 0}, {0, 1}, {1, 1}});
+        assert search.findWin(5, NO_DEADLINE) == 2;
+
+        // X ha due in riga con entrambi i lati liberi su 7x7x4 dopo la sua mossa, O non ha niente
+        search = play(7, 7, 4, new int[][] {{3, 2}, {0, 0}, {3, 3}, {6, 6}});
+        int move = search.findWin(5, NO_DEADLINE);
+        assert move == 3 * 7 + 1 || move == 3 * 7 + 4;
+
+        // stessa riga di X ma O ha già due celle vincenti, X non può chiuderle entrambe
+        search = play(7, 7, 4, new int[][] {{3, 2}, {0, 1}, {3, 3}, {0, 2}, {6, 0}, {0, 3}});
+        assert search.findWin(5, NO_DEADLINE) == ThreatSearch.NO_MOVE;
+    }
+
+    @Test
+    @DisplayName("Every win found is a real win for the exact solver")
+    public void testSoundness() {
+        int[][] games = {{4, 4, 3}, {4, 5, 4}, {5, 5, 4}};
+        int[] stones = {4, 8, 10};
+        Random rand = new Random(7);
+        int found = 0;
+
+        for (int g = 0; g < games.length; g++) {
+            int M = games[g][0], N = games[g][1], K = games[g][2];
+            HashMap<Long, Integer> memo = new HashMap<Long, Integer>();
+            for (int round = 0; round < 60; round++) {
+                BitBoard board = new BitBoard(M, N, K);
+                ThreatSearch search = new ThreatSearch(M, N, K);
+                while (board.getMarkedCellsCount() < stones[g] && board.gameState() == MNKGameState.OPEN) {
+                    int cell = rand.nextInt(M * N);
+                    if (board.cellState(cell / N, cell % N) != mnkgame.MNKCellState.FREE)
+                        continue;
+                    board.markCell(cell / N, cell % N);
+                    search.markCell(cell / N, cell % N);
+                }
+                if (board.gameState() != MNKGameState.OPEN)
+                    continue;
+
+                int move = search.findWin(M * N, NO_DEADLINE);
+                if (move == ThreatSearch.NO_MOVE)
+                    continue;
+                found++;
+                MNKGameState state = board.markCell(move / N, move % N);
+                assert state != MNKGameState.OPEN || solve(board, memo) == -1 : "not a winning move";
+            }
+        }
+        assert found > 10;
+    }
+
+    // valore esatto per il giocatore di turno: 1 vince, 0 pareggio, -1 perde
+    private int solve(BitBoard board, HashMap<Long, Integer> memo) {
+        Integer known = memo.get(board.hash());
+        if (known != null)
+            return known;
+
+        int best = -1;
+        for (int cell = 0; cell < board.M * board.N && best < 1; cell++) {
+            if (board.cellState(cell / board.N, cell % board.N) != mnkgame.MNKCellState.FREE)
+                continue;
+            MNKGameState state = board.markCell(cell / board.N, cell % board.N);
+            int value;
+            if (state == MNKGameState.DRAW)
+                value = 0;
+            else if (state != MNKGameState.OPEN)
+                value = 1;
+            else
+                value = -solve(board, memo);
+            board.unmarkCell();
+            best = Math.max(best, value);
+        }
+        memo.put(board.hash(), best);
+        return best;
+    }
+}
@@ -0,0 +1,438 @@
+package MarkcelloPlayer;
+
+import java.util.Arrays;
+
+import mnkgame.MNKBudget;
+
+/**
+ * Ricerca nello spazio delle minacce (threat-space search, come per il Gomoku):
+ * cerca una vittoria forzata del giocatore di turno guardando solo le sue mosse che
+ * creano minacce e le risposte obbligate dell'avversario, così arriva molto più a fondo
+ * dell'alfa beta.
+ * <p>
+ * Si lavora sulle finestre di K celle consecutive, come le sliding window della board:
+ * una finestra senza pezzi avversari con K-1 pezzi propri è un <i>quattro</i> (la cella
+ * libera vince subito), con K-2 o K-3 è la base per i quattro e i <i>tre</i>. Per ogni
+ * giocatore si tengono gli insiemi delle finestre a questi livelli, aggiornati in
+ * O(K) a ogni mossa, quindi le minacce si trovano senza scorrere la board.
+ * </p>
+ * <p>
+ * Nodo dell'attaccante: vince se ha già un quattro; se il difensore ha un quattro deve
+ * chiuderlo, altrimenti prova le mosse che fanno un quattro e poi (se abilitate) quelle
+ * che fanno un tre, cioè che preparano una mossa con due celle vincenti. Nodo del
+ * difensore: se l'attaccante ha due celle vincenti ha perso, se ne ha una deve chiuderla,
+ * dopo un tre deve provare tutte le celle dei quattro doppi minacciati e tutti i suoi
+ * contro-quattro. Le altre risposte non servono: dopo di loro l'attaccante fa il quattro
+ * doppio e vince, quindi la vittoria trovata è sicura.
+ * </p>
+ */
+class ThreatSearch {
+    public static final int NO_MOVE = -1;
+
+    private static final int[] DI = {0, 1, 1, -1};
+    private static final int[] DJ = {1, 0, 1, 1};
+
+    // livelli tenuti negli insiemi: 0 -> K-1 pezzi, 1 -> K-2, 2 -> K-3
+    private static final int LEVELS = 3;
+    private static final int FOUR = 0;
+    private static final int THREE = 1;
+    private static final int TWO = 2;
+
+    // il tempo si controlla ogni TIME_CHECK_MASK + 1 nodi
+    private static final int TIME_CHECK_MASK = 1023;
+
+    private final int M, N, K;
+    private final byte[] board;  // 0 libera, 1 primo giocatore, 2 secondo
+    private final int[] history;
+    private int movesCount;
+
+    private final int[][] cellWindows;    // finestre che contengono ogni cella
+    private final int[][] windowCells;    // celle di ogni finestra
+    private final int[][] windowCount;    // [giocatore][finestra] pezzi nella finestra
+
+    // insiemi indicizzati delle finestre di ogni livello: [giocatore][livello]
+    private final int[][][] members;
+    private final int[][][] position;
+    private final int[][] size;
+
+    // per togliere i doppioni, markSet per gli insiemi di mosse e markWin per le celle vincenti
+    private final int[] markSet;
+    private final int[] markWin;
+    private int stampSet;
+    private int stampWin;
+
+    // due buffer di mosse per ogni ply della ricerca
+    private int[][] moves;
+    private int[][] scratch;
+
+    private boolean threes;
+    private long deadline;
+    private boolean timedOut;
+    private MNKBudget budget;
+    private long nodes;
+    private int bestMove;
+
+    ThreatSearch(int M, int N, int K) {
+        this.M = M;
+        this.N = N;
+        this.K = K;
+        int cells = M * N;
+        board = new byte[cells];
+        history = new int[cells];
+
+        int windows = 4 * cells;
+        windowCells = new int[windows][];
+        int[] perCell = new int[cells];
+        for (int dir = 0; dir < 4; dir++) {
+            for (int i = 0; i < M; i++) {
+                for (int j = 0; j < N; j++) {
+                    int endI = i + (K - 1) * DI[dir], endJ = j + (K - 1) * DJ[dir];
+                    if (endI < 0 || endI >= M || endJ >= N)
+                        continue;
+                    int[] w = new int[K];
+                    for (int t = 0; t < K; t++) {
+                        w[t] = (i + t * DI[dir]) * N + j + t * DJ[dir];
+                        perCell[w[t]]++;
+                    }
+                    windowCells[dir * cells + i * N + j] = w;
+                }
+            }
+        }
+
+        cellWindows = new int[cells][];
+        for (int c = 0; c < cells; c++)
+            cellWindows[c] = new int[perCell[c]];
+        Arrays.fill(perCell, 0);
+        for (int w = 0; w < windows; w++)
+            if (windowCells[w] != null)
+                for (int c : windowCells[w])
+                    cellWindows[c][perCell[c]++] = w;
+
+        windowCount = new int[2][windows];
+        members = new int[2][LEVELS][windows];
+        position = new int[2][LEVELS][windows];
+        size = new int[2][LEVELS];
+        for (int[][] p : position)
+            for (int[] lvl : p)
+                Arrays.fill(lvl, -1);
+
+        markSet = new int[cells];
+        markWin = new int[cells];
+        moves = new int[0][];
+        scratch = new int[0][];
+    }
+
+    /**
+     * Segna la mossa del giocatore di turno, le mosse vanno date tutte in ordine a partire dalla prima
+     */
+    void markCell(int i, int j) {
+        play(i * N + j);
+    }
+
+    void unmarkCell() {
+        undo();
+    }
+
+    /**
+     * Cerca una vittoria forzata del giocatore di turno, prima con i soli quattro
+     * e poi anche con i tre, in iterative deepening sul numero di ply.
+     *
+     * @param maxDepth ply massimi della sequenza, contando anche le risposte
+     * @param deadline istante (come {@link MNKBudget#currentTimeMillis()} del budget del turno)
+     *                 in cui rinunciare
+     * @return la cella <code>i * N + j</code> da giocare, NO_MOVE se non si è trovata una vittoria
+     */
+    int findWin(int maxDepth, long deadline) {
+        return findWin(maxDepth, deadline, MNKBudget.current());
+    }
+
+    /**
+     * Come {@link #findWin(int, long)}, con il deadline misurato su budget
+     */
+    int findWin(int maxDepth, long deadline, MNKBudget budget) {
+        this.deadline = deadline;
+        this.budget = budget;
+        this.timedOut = false;
+        ensureBuffers(maxDepth + 2);
+
+        for (int pass = 0; pass < 2; pass++) {
+            threes = pass == 1;
+            for (int depth = 1; depth <= maxDepth && !timedOut; depth += 2) {
+                bestMove = NO_MOVE;
+                if (attacker(0, depth))
+                    return bestMove;
+            }
+        }
+        return NO_MOVE;
+    }
+
+    /**
+     * @return nodi visitati da quando è stato creato
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    private boolean attacker(int ply, int depth) {
+        if (isTimeUp())
+            return false;
+        int a = movesCount & 1, d = 1 - a;
+
+        int[] buf = moves[ply];
+        if (winCells(a, buf) > 0) {
+            if (ply == 0)
+                bestMove = buf[0];
+            return true;
+        }
+        if (depth <= 0 || movesCount == board.length)
+            return false;
+
+        int count;
+        int defenderWins = winCells(d, buf);
+        if (defenderWins >= 2)
+            return false;
+        else if (defenderWins == 1)
+            count = 1;  // bisogna chiudere il quattro dell'avversario
+        else
+            count = attackMoves(a, buf, scratch[ply]);
+
+        for (int k = 0; k < count; k++) {
+            play(buf[k]);
+            boolean win = defender(ply + 1, depth - 1);
+            undo();
+            if (win) {
+                if (ply == 0)
+                    bestMove = buf[k];
+                return true;
+            }
+            if (timedOut)
+                return false;
+        }
+        return false;
+    }
+
+    private boolean defender(int ply, int depth) {
+        if (isTimeUp())
+            return false;
+        int d = movesCount & 1, a = 1 - d;
+
+        if (countWinCells(d) > 0)
+            return false;
+
+        int[] buf = moves[ply];
+        int gains = winCells(a, buf);
+        if (gains >= 2)
+            return true;
+        if (depth <= 0 || movesCount == board.length)
+            return false;
+
+        int count;
+        if (gains == 1)
+            count = 1;
+        else if (threes)
+            count = threeReplies(a, d, ply);
+        else
+            count = 0;
+        if (count == 0)
+            return false;
+
+        for (int k = 0; k < count; k++) {
+            play(buf[k]);
+            boolean win = attacker(ply + 1, depth - 1);
+            undo();
+            if (!win)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mosse dell'attaccante: prima quelle che fanno un quattro, poi quelle che fanno un tre
+     */
+    private int attackMoves(int a, int[] dst, int[] buf) {
+        stampSet++;
+        int count = collectEmpty(a, THREE, dst, 0);
+        if (!threes)
+            return count;
+
+        int fours = count;
+        count = collectEmpty(a, TWO, dst, count);
+        // dei candidati dopo i quattro si tengono solo quelli che fanno davvero un tre
+        int kept = fours;
+        for (int k = fours; k < count; k++) {
+            int move = dst[k];
+            play(move);
+            boolean isThree = hasDoubleThreat(a, buf);
+            undo();
+            if (isThree)
+                dst[kept++] = move;
+        }
+        return kept;
+    }
+
+    /**
+     * Risposte del difensore a un tre: tutte le mosse dell'attaccante che fanno due celle
+     * vincenti insieme a quelle celle, più i contro-quattro del difensore
+     */
+    private int threeReplies(int a, int d, int ply) {
+        int[] candidates = scratch[ply];
+        stampSet++;
+        int count = collectEmpty(a, THREE, candidates, 0);
+
+        int[] dst = moves[ply];
+        int[] gains = scratch[ply + 1];
+        stampSet++;
+        int replies = 0;
+        for (int k = 0; k < count; k++) {
+            int w = candidates[k];
+            play(w);
+            int g = winCells(a, gains);
+            undo();
+            if (g < 2)
+                continue;
+            replies = addUnique(dst, replies, w);
+            for (int h = 0; h < g; h++)
+                replies = addUnique(dst, replies, gains[h]);
+        }
+        if (replies == 0)
+            return 0;
+        return collectEmpty(d, THREE, dst, replies);
+    }
+
+    /**
+     * @return true se a ha una mossa che fa due celle vincenti insieme
+     */
+    private boolean hasDoubleThreat(int a, int[] buf) {
+        stampSet++;
+        int count = collectEmpty(a, THREE, buf, 0);
+        for (int k = 0; k < count; k++) {
+            play(buf[k]);
+            boolean doubleThreat = countWinCells(a) >= 2;
+            undo();
+            if (doubleThreat)
+                return true;
+        }
+        return false;
+    }
+
+    private int addUnique(int[] dst, int count, int cell) {
+        if (markSet[cell] != stampSet) {
+            markSet[cell] = stampSet;
+            dst[count++] = cell;
+        }
+        return count;
+    }
+
+    // aggiunge a dst le celle libere delle finestre del livello, senza doppioni nello stesso stampSet
+    private int collectEmpty(int player, int level, int[] dst, int count) {
+        int[] set = members[player][level];
+        for (int k = 0; k < size[player][level]; k++)
+            for (int c : windowCells[set[k]])
+                if (board[c] == 0)
+                    count = addUnique(dst, count, c);
+        return count;
+    }
+
+    /**
+     * @return numero di celle con cui player vince subito, messe in dst
+     */
+    private int winCells(int player, int[] dst) {
+        stampWin++;
+        int count = 0;
+        int[] set = members[player][FOUR];
+        for (int k = 0; k < size[player][FOUR]; k++) {
+            for (int c : windowCells[set[k]]) {
+                if (board[c] == 0 && markWin[c] != stampWin) {
+                    markWin[c] = stampWin;
+                    dst[count++] = c;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int countWinCells(int player) {
+        stampWin++;
+        int count = 0;
+        int[] set = members[player][FOUR];
+        for (int k = 0; k < size[player][FOUR]; k++) {
+            for (int c : windowCells[set[k]]) {
+                if (board[c] == 0 && markWin[c] != stampWin) {
+                    markWin[c] = stampWin;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean isTimeUp() {
+        if (!timedOut && (++nodes & TIME_CHECK_MASK) == 0) {
+            budget.spend(TIME_CHECK_MASK + 1);
+            timedOut = budget.currentTimeMillis() > deadline;
+        }
+        return timedOut;
+    }
+
+    private void ensureBuffers(int plies) {
+        if (moves.length >= plies + 1)
+            return;
+        moves = new int[plies + 1][board.length];
+        scratch = new int[plies + 1][board.length];
+    }
+
+    private void play(int cell) {
+        int p = movesCount & 1;
+        board[cell] = (byte) (p + 1);
+        history[movesCount++] = cell;
+        for (int w : cellWindows[cell]) {
+            removeFromSets(w);
+            windowCount[p][w]++;
+            addToSets(w);
+        }
+    }
+
+    private void undo() {
+        int cell = history[--movesCount];
+        int p = board[cell] - 1;
+        board[cell] = 0;
+        for (int w : cellWindows[cell]) {
+            removeFromSets(w);
+            windowCount[p][w]--;
+            addToSets(w);
+        }
+    }
+
+    // livello della finestra per il giocatore, -1 se non è tenuta negli insiemi
+    private int level(int player, int w) {
+        int own = windowCount[player][w];
+        if (own == 0 || windowCount[1 - player][w] != 0)
+            return -1;
+        int level = K - 1 - own;
+        return level >= 0 && level < LEVELS ? level : -1;
+    }
+
+    private void removeFromSets(int w) {
+        for (int p = 0; p < 2; p++) {
+            int level = level(p, w);
+            if (level < 0)
+                continue;
+            int[] set = members[p][level];
+            int[] pos = position[p][level];
+            int last = set[--size[p][level]];
+            set[pos[w]] = last;
+            pos[last] = pos[w];
+            pos[w] = -1;
+        }
+    }
+
+    private void addToSets(int w) {
+        for (int p = 0; p < 2; p++) {
+            int level = level(p, w);
+            if (level < 0)
+                continue;
+            position[p][level][w] = size[p][level];
+            members[p][level][size[p][level]++] = w;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package MarkcelloPlayer;
+
+/**
+ * Tabella delle trasposizioni a dimensione fissa (potenza di 2), indicizzata dalla
+ * chiave di Zobrist della board.
+ * <p>
+ * Ogni entry è composta da due long: la chiave e i dati impacchettati
+ * (valore, profondità rimanente, tipo di bound, mossa migliore, età), così
+ * probe e store non allocano niente. I dati si leggono con i metodi statici
+ * {@link #value(long)}, {@link #depth(long)}, {@link #flag(long)} e {@link #move(long)}.
+ * </p>
+ * <p>
+ * La sostituzione preferisce la profondità: una entry viene sovrascritta solo da
+ * una ricerca almeno altrettanto profonda, oppure se appartiene a una ricerca vecchia.
+ * </p>
+ * <p>
+ * La tabella può essere condivisa fra più thread senza lock: nell'array delle chiavi
+ * si salva chiave XOR dati, quindi una entry scritta a metà da due thread non
+ * corrisponde più alla sua chiave e viene scartata dal probe.
+ * </p>
+ */
+public class TranspositionTable {
+    public static final int EMPTY = 0;
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;  // il valore vero è >= value
+    public static final int UPPER = 3;  // il valore vero è <= value
+
+    public static final int NO_MOVE = -1;
+
+    // layout dei dati: | age 6 | move+1 16 | flag 2 | depth 8 | value 32 |
+    private static final int DEPTH_SHIFT = 32;
+    private static final int FLAG_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int AGE_SHIFT = 58;
+
+    private final long[] keys;  // chiave XOR dati
+    private final long[] data;
+    private final int mask;
+    private int age;
+
+    /**
+     * @param log2Size la tabella avrà 2^log2Size entry
+     */
+    public TranspositionTable(int log2Size) {
+        keys = new long[1 << log2Size];
+        data = new long[1 << log2Size];
+        mask = (1 << log2Size) - 1;
+        age = 0;
+    }
+
+    /**
+     * Da chiamare all'inizio di ogni nuova ricerca, così le entry vecchie possono
+     * essere sostituite anche da ricerche meno profonde.
+     */
+    public void newSearch() {
+        age = (age + 1) & 63;
+    }
+
+    /**
+     * @return i dati impacchettati della posizione, 0 se non presente
+     */
+    public long probe(long key) {
+        int idx = (int) key & mask;
+        long d = data[idx];
+        if ((keys[idx] ^ d) != key || flag(d) == EMPTY)
+            return 0L;
+        return d;
+    }
+
+    /**
+     * Salva il risultato della ricerca di una posizione
+     *
+     * @param depth profondità rimanente con cui è stato calcolato il valore
+     * @param flag  EXACT, LOWER o UPPER
+     * @param move  indice i * N + j della mossa migliore, NO_MOVE se non c'è
+     */
+    public void store(long key, int value, int depth, int flag, int move) {
+        int idx = (int) key & mask;
+        long old = data[idx];
+        if (flag(old) != EMPTY && age(old) == age && depth < depth(old))
+            return;
+
+        if (move == NO_MOVE && (keys[idx] ^ old) == key)
+            move = move(old);  // mantieni la mossa migliore trovata in precedenza
+
+        long d = (value & 0xFFFFFFFFL)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | ((long) flag << FLAG_SHIFT)
+                | ((long) ((move + 1) & 0xFFFF) << MOVE_SHIFT)
+                | ((long) age << AGE_SHIFT);
+        keys[idx] = key ^ d;
+        data[idx] = d;
+    }
+
+    public static int value(long data) {
+        return (int) data;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int flag(long data) {
+        return (int) (data >>> FLAG_SHIFT) & 3;
+    }
+
+    public static int move(long data) {
+        return ((int) (data >>> MOVE_SHIFT) & 0xFFFF) - 1;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & 63;
+    }
+}
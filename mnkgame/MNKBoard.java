@@ -24,7 +24,6 @@ package mnkgame;
 
 import java.lang.IllegalStateException;
 import java.lang.IndexOutOfBoundsException;
-import java.util.HashSet;
 import java.util.LinkedList;
 
 /**
@@ -51,7 +50,18 @@ public class MNKBoard {
 
     protected final MNKCellState[][] B;
     protected final LinkedList<MNKCell> MC; // Marked Cells
-    protected final HashSet<MNKCell> FC; // Free Cells
+
+    /**
+     * Free Cells, as cell indexes <code>i*N+j</code>: the first <code>FCsize</code> entries are
+     * the free cells. A marked cell keeps in <code>FCpos</code> the position it must
+     * be swapped back to when it is unmarked, so undoes restore the exact previous order.
+     */
+    protected final int[] FC;
+    protected final int[] FCpos; // Position of each cell index inside FC
+    protected int FCsize;
+
+    // Cell flyweights indexed by (i*N+j)*3 + state
+    private final MNKCell[] cells;
 
     private final MNKCellState[] Player = {MNKCellState.P1, MNKCellState.P2};
 
@@ -59,6 +69,9 @@ public class MNKBoard {
 
     protected MNKGameState gameState; // game state
 
+    private final Zobrist zobrist;
+    protected long hash; // Zobrist key of the current position
+
     /**
      * Create a board of size MxN and initialize the game parameters
      *
@@ -81,9 +94,15 @@ public class MNKBoard {
         this.K = K;
 
         B = new MNKCellState[M][N];
-        // Initial capacity large enough to assure load factor < 0.75
-        FC = new HashSet<MNKCell>((int) Math.ceil((M * N) / 0.75));
+        FC = new int[M * N];
+        FCpos = new int[M * N];
+        cells = new MNKCell[M * N * 3];
+        for (int i = 0; i < M; i++)
+            for (int j = 0; j < N; j++)
+                for (MNKCellState s : MNKCellState.values())
+                    cells[(i * N + j) * 3 + s.ordinal()] = MNKCell.valueOf(i, j, s);
         MC = new LinkedList<MNKCell>();
+        zobrist = new Zobrist(M, N);
 
         reset();
     }
@@ -94,6 +113,7 @@ public class MNKBoard {
     public void reset() {
         currentPlayer = 0;
         gameState = MNKGameState.OPEN;
+        hash = 0;
         initBoard();
         initFreeCellList();
         initMarkedCellList();
@@ -134,6 +154,17 @@ public class MNKBoard {
         return gameState;
     }
 
+    /**
+     * Returns the Zobrist key of the current position.
+     * <p>The key is updated in O(1) by <code>markCell</code> and <code>unmarkCell</code>
+     * and it is the same for the same position on any board.</p>
+     *
+     * @return 64-bit position key
+     */
+    public long hash() {
+        return hash;
+    }
+
     /**
      * Returns the id of the player allowed to play next move.
      *
@@ -165,19 +196,19 @@ public class MNKBoard {
         } else if (B[i][j] != MNKCellState.FREE) {
             throw new IllegalStateException("Cell " + i + "," + j + " is not free");
         } else {
-            MNKCell oldc = new MNKCell(i, j, B[i][j]);
-            MNKCell newc = new MNKCell(i, j, Player[currentPlayer]);
+            MNKCell newc = getCell(i, j, Player[currentPlayer]);
 
             B[i][j] = Player[currentPlayer];
 
-            FC.remove(oldc);
+            removeFreeCell(i * N + j);
             MC.add(newc);
+            hash ^= zobrist.key(i, j, currentPlayer);
 
             currentPlayer = (currentPlayer + 1) % 2;
 
             if (isWinningCell(i, j))
                 gameState = B[i][j] == MNKCellState.P1 ? MNKGameState.WINP1 : MNKGameState.WINP2;
-            else if (FC.isEmpty())
+            else if (FCsize == 0)
                 gameState = MNKGameState.DRAW;
 
             return gameState;
@@ -194,11 +225,11 @@ public class MNKBoard {
             throw new IllegalStateException("No move to undo");
         } else {
             MNKCell oldc = MC.removeLast();
-            MNKCell newc = new MNKCell(oldc.i, oldc.j, MNKCellState.FREE);
 
             B[oldc.i][oldc.j] = MNKCellState.FREE;
 
-            FC.add(newc);
+            reinsertFreeCell(oldc.i * N + oldc.j);
+            hash ^= zobrist.key(oldc.i, oldc.j, oldc.state);
             currentPlayer = (currentPlayer + 1) % 2;
             gameState = MNKGameState.OPEN;
         }
@@ -220,7 +251,46 @@ public class MNKBoard {
      * @return List of free cells
      */
     public MNKCell[] getFreeCells() {
-        return FC.toArray(new MNKCell[FC.size()]);
+        MNKCell[] cells = new MNKCell[FCsize];
+        getFreeCells(cells);
+        return cells;
+    }
+
+    /**
+     * Copies the free cells into a caller-supplied array, without allocating.
+     * <p>There is not a predefined order for the free cells in the array</p>
+     * @param cells Destination array, at least <code>getFreeCellsCount()</code> long
+     * @return Number of free cells written in <code>cells</code>
+     */
+    public int getFreeCells(MNKCell[] cells) {
+        for (int k = 0; k < FCsize; k++)
+            cells[k] = this.cells[FC[k] * 3 + MNKCellState.FREE.ordinal()];
+        return FCsize;
+    }
+
+    /**
+     * Returns the cached cell <code>i,j</code> with the given state, without allocating.
+     *
+     * @param i i-th row
+     * @param j j-th column
+     * @param state Cell state
+     *
+     * @return The flyweight for the cell
+     * @throws IndexOutOfBoundsException If <code>i,j</code> are out of matrix bounds
+     */
+    public MNKCell getCell(int i, int j, MNKCellState state) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= M || j < 0 || j >= N)
+            throw new IndexOutOfBoundsException("Indexes " + i + "," + j + " are out of matrix bounds");
+        return cells[(i * N + j) * 3 + state.ordinal()];
+    }
+
+    /**
+     * Returns the number of free cells.
+     *
+     * @return Number of free cells
+     */
+    public int getFreeCellsCount() {
+        return FCsize;
     }
 
     // Sets to free all board cells
@@ -232,10 +302,31 @@ public class MNKBoard {
 
     // Rebuilds the free cells set
     private void initFreeCellList() {
-        this.FC.clear();
-        for (int i = 0; i < M; i++)
-            for (int j = 0; j < N; j++)
-                this.FC.add(new MNKCell(i, j));
+        for (int k = 0; k < M * N; k++) {
+            FC[k] = k;
+            FCpos[k] = k;
+        }
+        FCsize = M * N;
+    }
+
+    // Swaps the cell with the last free one, O(1)
+    private void removeFreeCell(int cell) {
+        int pos = FCpos[cell];
+        int last = FC[FCsize - 1];
+        FC[pos] = last;
+        FCpos[last] = pos;
+        FC[FCsize - 1] = cell; // FCpos[cell] still points to pos
+        FCsize--;
+    }
+
+    // Undoes removeFreeCell of the last marked cell, O(1)
+    private void reinsertFreeCell(int cell) {
+        int pos = FCpos[cell];
+        int moved = FC[pos];
+        FC[pos] = cell;
+        FC[FCsize] = moved;
+        FCpos[moved] = FCsize;
+        FCsize++;
     }
 
     // Resets the marked cells list
@@ -0,0 +1,103 @@
+package mnkgame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock and random seed of a move, set by {@link MNKPlayerTester} and {@link MNKTournament}
+ * on the thread that calls the player.
+ * <p>
+ * By default the clock is the wall clock and the seed changes every game. In node budget
+ * mode (option <code>-n</code> of the runners) the clock of a move starts from 0 and
+ * advances only when the player counts its work with {@link #spend(long)}: a move of
+ * <code>timeout</code> seconds lasts exactly <code>nodes</code> expansions, whatever the
+ * load of the machine, and the seed of every player in every game is fixed. With the
+ * same options two runs play the same games, and many games can run in parallel without
+ * taking time from each other. A player that does not count its work keeps the wall clock
+ * of its own timeout checks.
+ * </p>
+ * <p>
+ * A player reads the budget of the move with {@link #current()} in <code>initPlayer</code>
+ * or <code>selectCell</code>, and passes the object to its helper threads: the methods are
+ * thread safe.
+ * </p>
+ */
+public final class MNKBudget {
+    private static final ThreadLocal<MNKBudget> CURRENT = new ThreadLocal<MNKBudget>();
+
+    private final long nodes;          // 0 for the wall clock
+    private final long timeoutMillis;
+    private final long seed;
+    private final AtomicLong spent = new AtomicLong();
+
+    private MNKBudget(long nodes, int timeout_in_secs, long seed) {
+        this.nodes = nodes;
+        this.timeoutMillis = timeout_in_secs * 1000L;
+        this.seed = seed;
+    }
+
+    /**
+     * @param nodes           node expansions per move, 0 for the wall clock
+     * @param timeout_in_secs timeout of a move
+     * @param seed            seed of the player
+     */
+    static MNKBudget of(long nodes, int timeout_in_secs, long seed) {
+        return new MNKBudget(nodes, timeout_in_secs, seed);
+    }
+
+    /**
+     * @return a new budget for the next call, with the same settings and seed
+     */
+    MNKBudget next() {
+        return new MNKBudget(nodes, (int) (timeoutMillis / 1000), seed);
+    }
+
+    static void set(MNKBudget budget) {
+        if (budget == null)
+            CURRENT.remove();
+        else
+            CURRENT.set(budget);
+    }
+
+    /**
+     * @return the budget of the running move, the wall clock with a random seed if the
+     * player is not run by a tester
+     */
+    public static MNKBudget current() {
+        MNKBudget budget = CURRENT.get();
+        return budget != null ? budget : new MNKBudget(0, 0, System.nanoTime());
+    }
+
+    /**
+     * @return true in node budget mode
+     */
+    public boolean isNodeBudget() {
+        return nodes > 0;
+    }
+
+    /**
+     * @return the seed for the random generators of the player
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Counts work done by the player, it does nothing with the wall clock
+     *
+     * @param expansions node expansions (or playouts, or any unit of search)
+     */
+    public void spend(long expansions) {
+        if (nodes > 0)
+            spent.addAndGet(expansions);
+    }
+
+    /**
+     * @return the time in milliseconds, like System.currentTimeMillis(); in node budget mode
+     * the time spent by the move, proportional to the expansions counted
+     */
+    public long currentTimeMillis() {
+        if (nodes == 0)
+            return System.currentTimeMillis();
+        return (long) ((double) spent.get() * timeoutMillis / nodes);
+    }
+}
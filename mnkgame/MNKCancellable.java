@@ -0,0 +1,17 @@
+package mnkgame;
+
+/**
+ * Optional interface of an MNKPlayer that can stop a move early. When a call to
+ * {@link MNKPlayer#selectCell(MNKCell[], MNKCell[])} or
+ * {@link MNKPlayer#initPlayer(int, int, int, boolean, int)} reaches the timeout, the
+ * game runners call {@link #cancelMove()} from the watchdog thread: the player should
+ * return as soon as possible, the move is already lost but the thread and the CPU
+ * it uses come back to the other games.
+ */
+public interface MNKCancellable {
+    /**
+     * Asks the running move to stop. Called from another thread, so it should only set a
+     * flag that the search checks.
+     */
+    void cancelMove();
+}
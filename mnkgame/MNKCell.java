@@ -28,6 +28,16 @@ package mnkgame;
  * @see MNKBoard MNKBoard
  */
 public class MNKCell {
+    /**
+     * Cells with <code>i,j</code> smaller than this bound are cached by <code>valueOf</code>
+     */
+    public static final int CACHE_SIZE = 128;
+
+    private static final MNKCellState[] STATES = MNKCellState.values();
+
+    // Flyweights indexed by ((i * CACHE_SIZE) + j) * 3 + state, lazily allocated
+    private static final MNKCell[] CACHE = new MNKCell[CACHE_SIZE * CACHE_SIZE * STATES.length];
+
     /**
      * Cell row index
      */
@@ -67,6 +77,30 @@ public class MNKCell {
         this.state = MNKCellState.FREE;
     }
 
+    /**
+     * Returns the shared immutable instance of the cell <code>i,j</code> with the given state.
+     * <p>Cells outside the cache bounds are allocated on each call.</p>
+     *
+     * @param i cell row index
+     * @param j cell column index
+     * @param state cell state
+     *
+     * @return the cached cell
+     */
+    public static MNKCell valueOf(int i, int j, MNKCellState state) {
+        if (i < 0 || i >= CACHE_SIZE || j < 0 || j >= CACHE_SIZE)
+            return new MNKCell(i, j, state);
+
+        int k = (i * CACHE_SIZE + j) * STATES.length + state.ordinal();
+        MNKCell c = CACHE[k];
+        if (c == null) {
+            // A race between two threads only creates two equal instances
+            c = new MNKCell(i, j, state);
+            CACHE[k] = c;
+        }
+        return c;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null)
@@ -83,7 +117,7 @@ public class MNKCell {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return ((this.i << 16) ^ this.j) * 3 + this.state.ordinal();
     }
 
     @Override
@@ -24,9 +24,6 @@ package mnkgame;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -43,6 +40,8 @@ import java.util.concurrent.TimeoutException;
  * OPTIONS:<br>
  * &nbsp;&nbsp;-t &lt;timeout&gt; Timeout in seconds</br>
  * &nbsp;&nbsp;-r &lt;rounds&gt;  &nbsp;Number of rounds</br>
+ * &nbsp;&nbsp;-n &lt;nodes&gt; &nbsp;&nbsp;Node budget per move instead of wall time (see {@link MNKBudget})</br>
+ * &nbsp;&nbsp;-s &lt;seed&gt; &nbsp;&nbsp;&nbsp;Seed of the players</br>
  * &nbsp;&nbsp;-v &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;Verbose
  * </p>
  */
@@ -50,6 +49,13 @@ public class MNKPlayerTester {
     private static int TIMEOUT = 10;
     private static int ROUNDS = 1;
     private static boolean VERBOSE = false;
+    private static long NODES = 0;
+    private static Long SEED = null;
+
+    /**
+     * Wall time limit in node budget mode, in timeouts: only a guard against players that never stop
+     */
+    static final int NODE_WALL_FACTOR = 10;
 
     private static int M;
     private static int N;
@@ -58,14 +64,15 @@ public class MNKPlayerTester {
     private static MNKBoard B;
 
     private static MNKPlayer[] Player = new MNKPlayer[2];
+    private static MNKBudget[] Budget = new MNKBudget[2];
 
     /**
-     * Scoring system
+     * Scoring system, shared with {@link MNKTournament}
      */
-    private static int WINP1SCORE = 2;
-    private static int WINP2SCORE = 3;
-    private static int DRAWSCORE = 1;
-    private static int ERRSCORE = 2;
+    static final int WINP1SCORE = 2;
+    static final int WINP2SCORE = 3;
+    static final int DRAWSCORE = 1;
+    static final int ERRSCORE = 2;
 
     private enum GameState {
         WINP1,
@@ -80,10 +87,28 @@ public class MNKPlayerTester {
     private MNKPlayerTester() {
     }
 
-    private static void initGame() {
+    /**
+     * @return the seed of player k in game number game: fixed with -s or -n, otherwise random
+     */
+    static long seed(Long seed, long game, int k) {
+        if (seed == null)
+            return System.nanoTime() ^ (game * 2 + k);
+        return (seed + game * 2 + k) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * @return the wall timeout of a move in seconds
+     */
+    static int wallTimeout(int timeout, long nodes) {
+        return nodes > 0 ? timeout * NODE_WALL_FACTOR : timeout;
+    }
+
+    private static void initGame(int round) {
         if (VERBOSE)
             System.out.println("Initializing " + M + "," + N + "," + K + " board");
         B = new MNKBoard(M, N, K);
+        for (int k = 0; k < 2; k++)
+            Budget[k] = MNKBudget.of(NODES, TIMEOUT, seed(SEED, round, k));
         
         // B.markCell(5, 4);
         // B.markCell(4, 3);
@@ -104,18 +129,12 @@ public class MNKPlayerTester {
                 if (VERBOSE)
                     System.out.println("Initializing " + Player[k].playerName() + " as Player " + (k + 1));
             final int i = k; // need to have a final variable here
-            final Runnable initPlayer = new Thread() {
-                @Override
-                public void run() {
-                    Player[i].initPlayer(B.M, B.N, B.K, i == 0, TIMEOUT);
-                }
-            };
-
-            final ExecutorService executor = Executors.newSingleThreadExecutor();
-            final Future future = executor.submit(initPlayer);
-            executor.shutdown();
+            final Future<Void> future = MNKWatchdog.start(Player[i], () -> {
+                Player[i].initPlayer(B.M, B.N, B.K, i == 0, TIMEOUT);
+                return null;
+            }, wallTimeout(TIMEOUT, NODES), Budget[i]);
             try {
-                future.get(TIMEOUT, TimeUnit.SECONDS);
+                future.get(wallTimeout(TIMEOUT, NODES), TimeUnit.SECONDS);
             } catch (TimeoutException e) {
                 System.err.println("Error: " + Player[i].playerName() + " interrupted: initialization takes too much time");
                 System.exit(1);
@@ -123,51 +142,42 @@ public class MNKPlayerTester {
                 System.err.println(e);
                 System.exit(1);
             }
-            if (!executor.isTerminated())
-                executor.shutdownNow();
         }
         if (VERBOSE)
             System.out.println();
     }
 
-    private static class StoppablePlayer implements Callable<MNKCell> {
-        private final MNKPlayer P;
-        private final MNKBoard B;
-
-        public StoppablePlayer(MNKPlayer P, MNKBoard B) {
-            this.P = P;
-            this.B = B;
-        }
-
-        public MNKCell call() throws InterruptedException {
-            return P.selectCell(B.getFreeCells(), B.getMarkedCells());
+    /**
+     * Waits up to 3 more timeouts for a move that did not stop in time
+     *
+     * @return true if the move eventually stopped
+     */
+    private static boolean awaitStop(Future<MNKCell> task, int curr) {
+        int n = 3; // Wait some more time to see if it stops
+        while (!task.isDone() && n > 0) {
+            System.err.println("Waiting for " + Player[curr].playerName() + " to stop ... (" + n + ")");
+            try {
+                task.get(wallTimeout(TIMEOUT, NODES), TimeUnit.SECONDS);
+            } catch (Exception e) {
+            }
+            n--;
         }
+        return task.isDone();
     }
 
     private static GameState runGame() {
         while (B.gameState() == MNKGameState.OPEN) {
             int curr = B.currentPlayer();
-            final ExecutorService executor = Executors.newSingleThreadExecutor();
-            final Future<MNKCell> task = executor.submit(new StoppablePlayer(Player[curr], B));
-            executor.shutdown(); // Makes the  ExecutorService stop accepting new tasks
+            final Future<MNKCell> task = MNKWatchdog.start(Player[curr], () -> Player[curr].selectCell(B.getFreeCells(), B.getMarkedCells()),
+                    wallTimeout(TIMEOUT, NODES), Budget[curr].next());
 
             MNKCell c = null;
 
             try {
-                c = task.get(TIMEOUT, TimeUnit.SECONDS);
+                c = task.get(wallTimeout(TIMEOUT, NODES), TimeUnit.SECONDS);
             } catch (TimeoutException ex) {
-                int n = 3; // Wait some more time to see if it stops
                 System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") interrupted due to timeout");
-                while (!task.isDone() && n > 0) {
-                    System.err.println("Waiting for " + Player[curr].playerName() + " to stop ... (" + n + ")");
-                    try {
-                        Thread.sleep(TIMEOUT * 1000);
-                    } catch (InterruptedException e) {
-                    }
-                    n--;
-                }
-
-                if (n == 0) {
+                if (!awaitStop(task, curr)) {
                     System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") still running: game closed");
                     return curr == 0 ? GameState.EP1EX : GameState.EP2EX;
                 } else {
@@ -175,29 +185,13 @@ public class MNKPlayerTester {
                     return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
                 }
             } catch (Exception ex) {
-                int n = 3; // Wait some more time to see if it stops
+                // the move threw, so it has already stopped
                 System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") interrupted due to exception");
                 System.err.println(" " + ex);
-                while (!task.isDone() && n > 0) {
-                    System.err.println("Waiting for " + Player[curr].playerName() + " to stop ... (" + n + ")");
-                    try {
-                        Thread.sleep(TIMEOUT * 1000);
-                    } catch (InterruptedException e) {
-                    }
-                    n--;
-                }
-                if (n == 0) {
-                    System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") still running: game closed");
-                    return curr == 0 ? GameState.EP1EX : GameState.EP2EX;
-                } else {
-                    System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") eventually stopped: round closed");
-                    return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
-                }
+                System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") eventually stopped: round closed");
+                return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
             }
 
-            if (!executor.isTerminated())
-                executor.shutdownNow();
-
             if (B.cellState(c.i, c.j) == MNKCellState.FREE) {
                 if (VERBOSE)
                     System.out.println("Player " + (curr + 1) + " (" + Player[curr].playerName() + ") -> [" + c.i + "," + c.j + "]");
@@ -238,6 +232,26 @@ public class MNKPlayerTester {
                                 throw new IllegalArgumentException("Illegal integer format for " + args[i - 1] + " argument: " + args[i]);
                             }
                             break;
+                        case 'n':
+                            if (args.length < i + 2)
+                                throw new IllegalArgumentException("Expected parameter after " + args[i]);
+
+                            try {
+                                NODES = Long.parseLong(args[++i]);
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("Illegal integer format for " + args[i - 1] + " argument: " + args[i]);
+                            }
+                            break;
+                        case 's':
+                            if (args.length < i + 2)
+                                throw new IllegalArgumentException("Expected parameter after " + args[i]);
+
+                            try {
+                                SEED = Long.parseLong(args[++i]);
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("Illegal integer format for " + args[i - 1] + " argument: " + args[i]);
+                            }
+                            break;
                         case 'v':
                             VERBOSE = true;
                             break;
@@ -294,6 +308,8 @@ public class MNKPlayerTester {
         System.err.println("OPTIONS:");
         System.err.println("  -t <timeout>  Timeout in seconds. Default: " + TIMEOUT);
         System.err.println("  -r <rounds>   Number of rounds. Default: " + ROUNDS);
+        System.err.println("  -n <nodes>    Node budget per move instead of wall time. Default: wall time");
+        System.err.println("  -s <seed>     Seed of the players. Default: random, 0 with -n");
         System.err.println("  -v            Verbose. Default: " + VERBOSE);
     }
 
@@ -314,20 +330,23 @@ public class MNKPlayerTester {
             System.err.println(e);
             System.exit(1);
         }
+        if (NODES > 0 && SEED == null)
+            SEED = 0L;  // node budget games are reproducible
 
         if (VERBOSE) {
             System.out.println("Game type : " + M + "," + N + "," + K);
             System.out.println("Player1   : " + Player[0].playerName());
             System.out.println("Player2   : " + Player[1].playerName());
             System.out.println("Rounds    : " + ROUNDS);
-            System.out.println("Timeout   : " + TIMEOUT + " secs\n\n");
+            System.out.println("Timeout   : " + TIMEOUT + " secs" + (NODES > 0 ? " = " + NODES + " nodes" : ""));
+            System.out.println("Seed      : " + (SEED == null ? "random" : SEED) + "\n\n");
         }
 
         boolean stop = false;
         for (int i = 1; i <= ROUNDS && !stop; i++) {
             if (VERBOSE)
                 System.out.println("\n**** ROUND " + i + " ****");
-            initGame();
+            initGame(i);
             GameState state = runGame();
 
             switch (state) {
@@ -0,0 +1,334 @@
+package mnkgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Round-robin tournament between MNKPlayer classes on a list of MxNxK games, scored like
+ * {@link MNKPlayerTester}. Every ordered pair of players (so each one plays both as first
+ * and as second player) plays ROUNDS games on every board.
+ * <p>
+ * At most THREADS games run at the same time. Every game creates its own player instances
+ * and runs their moves through {@link MNKWatchdog}, on virtual threads when the JVM has
+ * them, with the move timeout: a player that times out, throws or selects an illegal move
+ * loses that game with an error, and the other games go on. Players that search with
+ * several threads need fewer concurrent games, otherwise the games steal time from each other.
+ * </p>
+ * <p>
+ * Usage: MNKTournament [OPTIONS] &lt;MNKPlayer class name&gt; &lt;MNKPlayer class name&gt; ...<br/>
+ * OPTIONS:<br>
+ * &nbsp;&nbsp;-t &lt;timeout&gt; Timeout in seconds</br>
+ * &nbsp;&nbsp;-r &lt;rounds&gt;  &nbsp;Number of rounds for every pair and board</br>
+ * &nbsp;&nbsp;-j &lt;games&gt; &nbsp;&nbsp;Number of concurrent games</br>
+ * &nbsp;&nbsp;-n &lt;nodes&gt; &nbsp;&nbsp;Node budget per move instead of wall time (see {@link MNKBudget})</br>
+ * &nbsp;&nbsp;-s &lt;seed&gt; &nbsp;&nbsp;&nbsp;Seed of the players</br>
+ * &nbsp;&nbsp;-g &lt;M,N,K&gt; &nbsp;&nbsp;Board, can be repeated. Default: the boards of the final test</br>
+ * &nbsp;&nbsp;-v &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;Verbose
+ * </p>
+ */
+public class MNKTournament {
+    private static int TIMEOUT = 10;
+    private static int ROUNDS = 1;
+    private static int THREADS = Runtime.getRuntime().availableProcessors();
+    private static boolean VERBOSE = false;
+    private static long NODES = 0;
+    private static Long SEED = null;
+
+    private static final int[][] DEFAULT_GAMES = {
+            {3, 3, 3}, {4, 3, 3}, {4, 4, 3}, {4, 4, 4}, {5, 4, 4}, {5, 5, 4}, {5, 5, 5},
+            {6, 4, 4}, {6, 5, 4}, {6, 6, 4}, {6, 6, 5}, {6, 6, 6}, {7, 4, 4}, {7, 5, 4},
+            {7, 6, 4}, {7, 7, 4}, {7, 5, 5}, {7, 6, 5}, {7, 7, 5}, {7, 7, 6}, {7, 7, 7},
+            {8, 8, 4}, {10, 10, 5}, {50, 50, 10}, {70, 70, 10}
+    };
+
+    private static final List<int[]> Games = new ArrayList<int[]>();
+    private static final List<Class<? extends MNKPlayer>> Players = new ArrayList<Class<? extends MNKPlayer>>();
+    private static final List<String> Names = new ArrayList<String>();
+
+    private enum GameState {
+        WINP1,
+        WINP2,
+        DRAW,
+        ERRP1,
+        ERRP2;
+    }
+
+    private MNKTournament() {
+    }
+
+    /**
+     * One game between two new player instances
+     */
+    private static class Game {
+        private final int M, N, K;
+        private final int P1, P2;  // indexes in Players
+        private final int index;   // number of the game, for the seeds
+
+        Game(int[] game, int P1, int P2, int index) {
+            this.M = game[0];
+            this.N = game[1];
+            this.K = game[2];
+            this.P1 = P1;
+            this.P2 = P2;
+            this.index = index;
+        }
+
+        GameState play() {
+            int timeout = MNKPlayerTester.wallTimeout(TIMEOUT, NODES);
+            MNKBoard B = new MNKBoard(M, N, K);
+            MNKPlayer[] Player = new MNKPlayer[2];
+            MNKBudget[] Budget = new MNKBudget[2];
+            for (int k = 0; k < 2; k++) {
+                final int i = k;
+                Budget[i] = MNKBudget.of(NODES, TIMEOUT, MNKPlayerTester.seed(SEED, index, i));
+                try {
+                    Player[i] = newPlayer(i == 0 ? P1 : P2);
+                    MNKWatchdog.start(Player[i], () -> {
+                        Player[i].initPlayer(M, N, K, i == 0, TIMEOUT);
+                        return null;
+                    }, timeout, Budget[i]).get(timeout, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    System.err.println(this + ": " + Names.get(i == 0 ? P1 : P2) + " initialization failed: " + e);
+                    return i == 0 ? GameState.ERRP1 : GameState.ERRP2;
+                }
+            }
+
+            while (B.gameState() == MNKGameState.OPEN) {
+                int curr = B.currentPlayer();
+                String name = Names.get(curr == 0 ? P1 : P2);
+                Future<MNKCell> task = MNKWatchdog.start(Player[curr], () -> Player[curr].selectCell(B.getFreeCells(), B.getMarkedCells()),
+                        timeout, Budget[curr].next());
+
+                MNKCell c;
+                try {
+                    c = task.get(timeout, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    System.err.println(this + ": " + name + " interrupted due to timeout");
+                    return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
+                } catch (ExecutionException | InterruptedException e) {
+                    System.err.println(this + ": " + name + " interrupted due to exception " + e);
+                    return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
+                }
+
+                if (c == null || B.cellState(c.i, c.j) != MNKCellState.FREE) {
+                    System.err.println(this + ": " + name + " selected an illegal move " + c);
+                    return curr == 0 ? GameState.ERRP1 : GameState.ERRP2;
+                }
+                B.markCell(c.i, c.j);
+            }
+
+            return B.gameState() == MNKGameState.DRAW ? GameState.DRAW : (B.gameState() == MNKGameState.WINP1 ? GameState.WINP1 : GameState.WINP2);
+        }
+
+        @Override
+        public String toString() {
+            return M + "," + N + "," + K + " " + Names.get(P1) + " vs " + Names.get(P2);
+        }
+    }
+
+    private static MNKPlayer newPlayer(int index) throws ReflectiveOperationException {
+        return Players.get(index).getDeclaredConstructor().newInstance();
+    }
+
+    private static int parseInt(String[] args, int i) {
+        if (args.length < i + 2)
+            throw new IllegalArgumentException("Expected parameter after " + args[i]);
+        try {
+            return Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal integer format for " + args[i] + " argument: " + args[i + 1]);
+        }
+    }
+
+    private static void parseArgs(String args[]) {
+        List<String> L = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i].charAt(0)) {
+                case '-':
+                    char c = (args[i].length() != 2 ? 'x' : args[i].charAt(1));
+                    switch (c) {
+                        case 't':
+                            TIMEOUT = parseInt(args, i++);
+                            break;
+                        case 'r':
+                            ROUNDS = parseInt(args, i++);
+                            break;
+                        case 'j':
+                            THREADS = parseInt(args, i++);
+                            break;
+                        case 'n':
+                            NODES = parseInt(args, i++);
+                            break;
+                        case 's':
+                            SEED = (long) parseInt(args, i++);
+                            break;
+                        case 'g':
+                            if (args.length < i + 2)
+                                throw new IllegalArgumentException("Expected parameter after " + args[i]);
+                            String[] mnk = args[++i].split(",");
+                            try {
+                                if (mnk.length != 3)
+                                    throw new NumberFormatException();
+                                int[] game = {Integer.parseInt(mnk[0]), Integer.parseInt(mnk[1]), Integer.parseInt(mnk[2])};
+                                if (game[0] <= 0 || game[1] <= 0 || game[2] <= 0)
+                                    throw new IllegalArgumentException("Arguments  M, N, K must be larger than 0");
+                                Games.add(game);
+                            } catch (NumberFormatException e) {
+                                throw new IllegalArgumentException("Illegal M,N,K format for " + args[i - 1] + " argument: " + args[i]);
+                            }
+                            break;
+                        case 'v':
+                            VERBOSE = true;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Illegal argument:  " + args[i]);
+                    }
+                    break;
+                default:
+                    L.add(args[i]);
+            }
+        }
+
+        if (L.size() < 2)
+            throw new IllegalArgumentException("Missing arguments: at least two <MNKPlayer class>");
+        if (TIMEOUT <= 0 || ROUNDS <= 0 || THREADS <= 0)
+            throw new IllegalArgumentException("Timeout, rounds and concurrent games must be larger than 0");
+        if (NODES < 0)
+            throw new IllegalArgumentException("The node budget must not be negative");
+        if (NODES > 0 && SEED == null)
+            SEED = 0L;  // node budget games are reproducible
+        if (Games.isEmpty())
+            for (int[] game : DEFAULT_GAMES)
+                Games.add(game);
+
+        for (String P : L) {
+            try {
+                Class<? extends MNKPlayer> player = Class.forName(P).asSubclass(MNKPlayer.class);
+                Players.add(player);
+                Names.add(player.getDeclaredConstructor().newInstance().playerName());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Illegal argument: \'" + P + "\' class not found");
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Illegal argument: \'" + P + "\' class does not implement the MNKPlayer interface");
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Illegal argument: \'" + P + "\' class constructor needs to be empty");
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Illegal argument: \'" + P + "\' class (unexpected exception) " + e);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: MNKTournament [OPTIONS] <MNKPlayer class> <MNKPlayer class> ...");
+        System.err.println("OPTIONS:");
+        System.err.println("  -t <timeout>  Timeout in seconds. Default: " + TIMEOUT);
+        System.err.println("  -r <rounds>   Number of rounds for every pair and board. Default: " + ROUNDS);
+        System.err.println("  -j <games>    Number of concurrent games. Default: " + THREADS);
+        System.err.println("  -n <nodes>    Node budget per move instead of wall time. Default: wall time");
+        System.err.println("  -s <seed>     Seed of the players. Default: random, 0 with -n");
+        System.err.println("  -g <M,N,K>    Board, can be repeated. Default: the " + DEFAULT_GAMES.length + " boards of the final test");
+        System.err.println("  -v            Verbose. Default: " + VERBOSE);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+            System.exit(0);
+        }
+
+        try {
+            parseArgs(args);
+        } catch (Exception e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+
+        List<Game> games = new ArrayList<Game>();
+        for (int[] game : Games)
+            for (int p1 = 0; p1 < Players.size(); p1++)
+                for (int p2 = 0; p2 < Players.size(); p2++)
+                    if (p1 != p2)
+                        for (int r = 0; r < ROUNDS; r++)
+                            games.add(new Game(game, p1, p2, games.size()));
+
+        if (VERBOSE)
+            System.out.println("Games     : " + games.size() + ", " + THREADS + " at a time" + (MNKWatchdog.virtualThreads() ? " on virtual threads" : "") + ", timeout " + TIMEOUT + " secs\n");
+
+        // the games start in order as soon as one of the THREADS slots is free
+        long start = System.currentTimeMillis();
+        Semaphore slots = new Semaphore(THREADS);
+        List<CompletableFuture<GameState>> results = new ArrayList<CompletableFuture<GameState>>();
+        for (Game game : games)
+            results.add(new CompletableFuture<GameState>());
+        MNKWatchdog.execute(() -> {
+            for (int g = 0; g < games.size(); g++) {
+                CompletableFuture<GameState> result = results.get(g);
+                Game game = games.get(g);
+                slots.acquireUninterruptibly();
+                MNKWatchdog.execute(() -> {
+                    try {
+                        result.complete(game.play());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        });
+
+        // SCORE[p] = {score, won, lost, draw, error}
+        int[][] SCORE = new int[Players.size()][5];
+        for (int g = 0; g < games.size(); g++) {
+            Game game = games.get(g);
+            GameState state;
+            try {
+                state = results.get(g).get();
+            } catch (Exception e) {
+                System.err.println(game + ": " + e);
+                continue;
+            }
+
+            switch (state) {
+                case WINP1:
+                    SCORE[game.P1][0] += MNKPlayerTester.WINP1SCORE;
+                    SCORE[game.P1][1]++;
+                    SCORE[game.P2][2]++;
+                    break;
+                case WINP2:
+                    SCORE[game.P2][0] += MNKPlayerTester.WINP2SCORE;
+                    SCORE[game.P2][1]++;
+                    SCORE[game.P1][2]++;
+                    break;
+                case ERRP1:
+                    SCORE[game.P2][0] += MNKPlayerTester.ERRSCORE;
+                    SCORE[game.P1][4]++;
+                    break;
+                case ERRP2:
+                    SCORE[game.P1][0] += MNKPlayerTester.ERRSCORE;
+                    SCORE[game.P2][4]++;
+                    break;
+                case DRAW:
+                    SCORE[game.P1][0] += MNKPlayerTester.DRAWSCORE;
+                    SCORE[game.P1][3]++;
+                    SCORE[game.P2][0] += MNKPlayerTester.DRAWSCORE;
+                    SCORE[game.P2][3]++;
+                    break;
+            }
+            if (VERBOSE)
+                System.out.println(game + " : " + state);
+        }
+
+        if (VERBOSE)
+            System.out.println("\n**** FINAL SCORE (" + (System.currentTimeMillis() - start) / 1000 + " secs) ****");
+        for (int p = 0; p < Players.size(); p++)
+            System.out.println(Names.get(p) + " Score: " + SCORE[p][0] + " Won: " + SCORE[p][1] + " Lost: " + SCORE[p][2] + " Draw: " + SCORE[p][3] + " Error: " + SCORE[p][4]);
+        System.exit(0);
+    }
+}
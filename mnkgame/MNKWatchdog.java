@@ -0,0 +1,90 @@
+package mnkgame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the calls to the players for {@link MNKPlayerTester} and {@link MNKTournament}.
+ * <p>
+ * Every call runs on a virtual thread when the JVM has them (Java 21, looked up by
+ * reflection so the sources still build with Java 17), otherwise on a shared cached pool
+ * of daemon threads, which reuses the threads of the finished moves. The deadlines of all
+ * the running moves are in a single scheduled service: at the deadline a player that
+ * implements {@link MNKCancellable} is asked to stop. The caller waits on the returned
+ * future with the timeout, no thread sleeps. The call sees its {@link MNKBudget} as
+ * {@link MNKBudget#current()}.
+ * </p>
+ */
+final class MNKWatchdog {
+    private static final ThreadFactory DAEMON = r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    };
+
+    private static final ExecutorService MOVES = newMoveExecutor();
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(DAEMON);
+
+    private MNKWatchdog() {
+    }
+
+    private static ExecutorService newMoveExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(DAEMON);
+        }
+    }
+
+    /**
+     * @return true if the calls run on virtual threads
+     */
+    static boolean virtualThreads() {
+        return !(MOVES instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Runs a task on the shared executor, without deadline
+     */
+    static void execute(Runnable task) {
+        MOVES.execute(task);
+    }
+
+    /**
+     * Starts a call to player, with a deadline after timeout seconds
+     *
+     * @param player the player that makes the call, cancelled at the deadline if it is an {@link MNKCancellable}
+     * @param call   the call
+     * @param budget the clock and seed of the call
+     * @return the result of the call, to wait on with the timeout
+     */
+    static <T> CompletableFuture<T> start(MNKPlayer player, Callable<T> call, int timeout, MNKBudget budget) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        MOVES.execute(() -> {
+            MNKBudget.set(budget);
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                MNKBudget.set(null);
+            }
+        });
+
+        if (player instanceof MNKCancellable) {
+            ScheduledFuture<?> deadline = DEADLINES.schedule(() -> {
+                if (!result.isDone())
+                    ((MNKCancellable) player).cancelMove();
+            }, timeout, TimeUnit.SECONDS);
+            result.whenComplete((value, e) -> deadline.cancel(false));
+        }
+        return result;
+    }
+}
@@ -43,8 +43,8 @@ public class QuasiRandomPlayer implements MNKPlayer {
     }
 
     public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
-        // New random seed for each game
-        rand = new Random(System.currentTimeMillis());
+        // New random seed for each game, fixed by the tester for reproducible runs
+        rand = new Random(MNKBudget.current().seed());
         B = new MNKBoard(M, N, K);
         myWin = first ? MNKGameState.WINP1 : MNKGameState.WINP2;
         yourWin = first ? MNKGameState.WINP2 : MNKGameState.WINP1;
@@ -61,7 +61,8 @@ public class QuasiRandomPlayer implements MNKPlayer {
      * </p>
      */
     public MNKCell selectCell(MNKCell[] FC, MNKCell[] MC) {
-        long start = System.currentTimeMillis();
+        MNKBudget budget = MNKBudget.current();
+        long start = budget.currentTimeMillis();
         if (MC.length > 0) {
             MNKCell c = MC[MC.length - 1]; // Recover the last move from MC
             B.markCell(c.i, c.j); // Save the last move in the local MNKBoard
@@ -73,7 +74,8 @@ public class QuasiRandomPlayer implements MNKPlayer {
         // Check whether there is single move win
         for (MNKCell d : FC) {
             // If time is running out, select a random cell
-            if ((System.currentTimeMillis() - start) / 1000.0 > TIMEOUT * (99.0 / 100.0)) {
+            budget.spend(1);
+            if ((budget.currentTimeMillis() - start) / 1000.0 > TIMEOUT * (99.0 / 100.0)) {
                 MNKCell c = FC[rand.nextInt(FC.length)];
                 B.markCell(c.i, c.j);
                 return c;
@@ -93,7 +95,8 @@ public class QuasiRandomPlayer implements MNKPlayer {
         B.markCell(c.i, c.j); // mark the random position
         for (int k = 0; k < FC.length; k++) {
             // If time is running out, return the randomly selected  cell
-            if ((System.currentTimeMillis() - start) / 1000.0 > TIMEOUT * (99.0 / 100.0)) {
+            budget.spend(1);
+            if ((budget.currentTimeMillis() - start) / 1000.0 > TIMEOUT * (99.0 / 100.0)) {
                 return c;
             } else if (k != pos) {
                 MNKCell d = FC[k];
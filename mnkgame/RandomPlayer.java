@@ -38,8 +38,8 @@ public class RandomPlayer implements MNKPlayer {
     }
 
     public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
-        // New random seed for each game
-        rand = new Random(System.currentTimeMillis());
+        // New random seed for each game, fixed by the tester for reproducible runs
+        rand = new Random(MNKBudget.current().seed());
         // Save the timeout for testing purposes
         TIMEOUT = timeout_in_secs;
 
@@ -0,0 +1,176 @@
+package mnkgame;
+
+import java.util.Arrays;
+
+/**
+ * Symmetries of an MxN board and symmetry-reduced Zobrist keys.
+ * <p>
+ * A rectangular board has 4 symmetries (identity, 180° rotation and the two mirrors),
+ * a square one also has the two 90° rotations and the two diagonal mirrors. The object
+ * keeps the Zobrist key of the current position seen through every symmetry, updated
+ * in O(symmetries) on every mark and unmark; the canonical key is the smallest of them,
+ * so all the equivalent positions share it.
+ * </p>
+ * <p>
+ * Cells are indexes <code>i*N+j</code>. A move found in the canonical position is brought
+ * back to the real one with {@link #inverse(int, int)} of {@link #keySymmetry()}.
+ * While the position itself is symmetric (always at the first move) many moves are
+ * equivalent, {@link #representative(int)} keeps one per class.
+ * </p>
+ */
+public class Symmetry {
+    private final int M;
+    private final int N;
+    private final int[][] map;     // map[s][cell] is the image of cell through symmetry s
+    private final int[][] inverse;
+    private final long[][] keys;   // keys[s][cell*2 + player] = Zobrist key of the image of cell
+    private final long[] hashes;   // key of the current position through every symmetry
+
+    /**
+     * @param M Board rows
+     * @param N Board columns
+     */
+    public Symmetry(int M, int N) {
+        this.M = M;
+        this.N = N;
+        int count = M == N ? 8 : 4;
+        map = new int[count][M * N];
+        inverse = new int[count][M * N];
+        keys = new long[count][M * N * 2];
+        hashes = new long[count];
+
+        for (int s = 0; s < count; s++) {
+            for (int i = 0; i < M; i++) {
+                for (int j = 0; j < N; j++) {
+                    int image = image(s, i, j);
+                    map[s][i * N + j] = image;
+                    inverse[s][image] = i * N + j;
+                    for (int p = 0; p < 2; p++)
+                        keys[s][(i * N + j) * 2 + p] = Zobrist.keyOf(image / N, image % N, p);
+                }
+            }
+        }
+    }
+
+    // image of (i,j), the last four only exist on square boards
+    private int image(int s, int i, int j) {
+        switch (s) {
+            case 0: return i * N + j;                           // identity
+            case 1: return (M - 1 - i) * N + (N - 1 - j);       // 180° rotation
+            case 2: return i * N + (N - 1 - j);                 // left-right mirror
+            case 3: return (M - 1 - i) * N + j;                 // top-bottom mirror
+            case 4: return j * N + i;                           // main diagonal mirror
+            case 5: return (N - 1 - j) * N + (M - 1 - i);       // anti-diagonal mirror
+            case 6: return j * N + (M - 1 - i);                 // 90° clockwise rotation
+            default: return (N - 1 - j) * N + i;                // 90° counterclockwise rotation
+        }
+    }
+
+    /**
+     * @return number of symmetries of the board, 8 or 4
+     */
+    public int count() {
+        return map.length;
+    }
+
+    /**
+     * @return the image of <code>cell</code> through symmetry <code>s</code>
+     */
+    public int map(int s, int cell) {
+        return map[s][cell];
+    }
+
+    /**
+     * @return the cell whose image through symmetry <code>s</code> is <code>cell</code>
+     */
+    public int inverse(int s, int cell) {
+        return inverse[s][cell];
+    }
+
+    /**
+     * Adds (or removes, it is a XOR) the mark of <code>player</code> in <code>cell</code>
+     *
+     * @param player 0 (first player) or 1 (second player)
+     */
+    public void mark(int cell, int player) {
+        for (int s = 0; s < hashes.length; s++)
+            hashes[s] ^= keys[s][cell * 2 + player];
+    }
+
+    public void unmark(int cell, int player) {
+        mark(cell, player);
+    }
+
+    /**
+     * Back to the empty board
+     */
+    public void clear() {
+        Arrays.fill(hashes, 0);
+    }
+
+    /**
+     * @return the Zobrist key of the position seen through symmetry <code>s</code>
+     */
+    public long key(int s) {
+        return hashes[s];
+    }
+
+    /**
+     * @return the canonical key, the same for all the symmetric positions
+     */
+    public long key() {
+        return hashes[keySymmetry()];
+    }
+
+    /**
+     * @return the symmetry that gives the canonical key
+     */
+    public int keySymmetry() {
+        int best = 0;
+        for (int s = 1; s < hashes.length; s++)
+            if (hashes[s] < hashes[best])
+                best = s;
+        return best;
+    }
+
+    /**
+     * @return true if the position does not change through symmetry <code>s</code>
+     */
+    public boolean isInvariant(int s) {
+        return hashes[s] == hashes[0];
+    }
+
+    /**
+     * @return true if the position is invariant through some symmetry other than the identity,
+     * that is if some moves are equivalent
+     */
+    public boolean isSymmetric() {
+        for (int s = 1; s < hashes.length; s++)
+            if (hashes[s] == hashes[0])
+                return true;
+        return false;
+    }
+
+    /**
+     * The symmetries that leave the position unchanged form a group, so the moves
+     * equivalent to <code>cell</code> are its images through them: the representative
+     * is the smallest one. Two moves are equivalent iff they have the same representative.
+     *
+     * @return the smallest cell equivalent to <code>cell</code> in the current position
+     */
+    public int representative(int cell) {
+        int best = cell;
+        for (int s = 1; s < hashes.length; s++)
+            if (hashes[s] == hashes[0] && map[s][cell] < best)
+                best = map[s][cell];
+        return best;
+    }
+
+    /**
+     * @return true if a smaller equivalent move exists, so <code>cell</code> can be skipped
+     * when all the free cells are generated
+     */
+    public boolean isRedundant(int cell) {
+        return representative(cell) != cell;
+    }
+}
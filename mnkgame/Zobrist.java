@@ -0,0 +1,58 @@
+package mnkgame;
+
+/**
+ * Zobrist keys for (M,N,K)-game positions.
+ * <p>
+ * The key of a position is the XOR of the keys of its marked cells, so it can be
+ * updated in O(1) on every mark and undo. Keys only depend on <code>i,j</code> and on
+ * the player, so every board of every size produces the same key for the same position.
+ * </p>
+ */
+public class Zobrist {
+    private final int N;
+    private final long[] keys; // indexed by (i*N+j)*2 + player
+
+    /**
+     * Precomputes the keys of an MxN board
+     *
+     * @param M Board rows
+     * @param N Board columns
+     */
+    public Zobrist(int M, int N) {
+        this.N = N;
+        keys = new long[M * N * 2];
+        for (int i = 0; i < M; i++)
+            for (int j = 0; j < N; j++)
+                for (int p = 0; p < 2; p++)
+                    keys[(i * N + j) * 2 + p] = keyOf(i, j, p);
+    }
+
+    /**
+     * Returns the key of cell <code>i,j</code> marked by <code>player</code>
+     *
+     * @param player 0 (first player) or 1 (second player)
+     */
+    public long key(int i, int j, int player) {
+        return keys[(i * N + j) * 2 + player];
+    }
+
+    /**
+     * Returns the key of cell <code>i,j</code> in the given state, 0 for a free cell
+     */
+    public long key(int i, int j, MNKCellState state) {
+        if (state == MNKCellState.FREE)
+            return 0L;
+        return key(i, j, state == MNKCellState.P1 ? 0 : 1);
+    }
+
+    /**
+     * Computes the key of cell <code>i,j</code> marked by <code>player</code> without a table
+     */
+    public static long keyOf(int i, int j, int player) {
+        // SplitMix64 finalizer over the packed coordinates
+        long z = (((long) i << 32) | ((long) j << 1) | player) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -10,6 +10,7 @@ import java.util.LinkedList;
 import mnkgame.MNKCellState;
 import mnkgame.MNKGameState;
 import mnkgame.MNKCell;
+import mnkgame.Zobrist;
 
 public class Board {
     public final int M;
@@ -23,6 +24,8 @@ public class Board {
     private final MNKCellState[] Player = {MNKCellState.P1, MNKCellState.P2};
     protected int currentPlayer; // currentPlayer plays next move
     protected MNKGameState gameState; // game state
+    private final Zobrist zobrist;
+    protected long hash;  // chiave di Zobrist della posizione
 
     protected int globalHeuristicCount;
     protected final int[][] Heuristic;
@@ -63,6 +66,7 @@ public class Board {
         // large HashSet, so that it should never reallocate.
         FC = new HashSet<MNKCell>(2 * M * N);
         MC = new LinkedList<MNKCell>();
+        zobrist = new Zobrist(M, N);
         ownerPlayer = playerCode;
         enemyPlayer = playerCode == MNKCellState.P1 ? MNKCellState.P2 : MNKCellState.P1;
         reset();
@@ -77,6 +81,7 @@ public class Board {
     }
 
     public void setCellState(int i, int j, MNKCellState state) {
+        hash ^= zobrist.key(i, j, B[i][j]) ^ zobrist.key(i, j, state);
         B[i][j] = state;
     }
 
@@ -87,7 +92,8 @@ public class Board {
 
         for (Cell cell : node.moves) {
             B[cell.i][cell.j] = Player[currentPlayer];
-            FC.remove(new MNKCell(cell.i, cell.j));
+            hash ^= zobrist.key(cell.i, cell.j, currentPlayer);
+            FC.remove(cell.getCell());
             currentPlayer = (currentPlayer + 1) % 2;
         }
     }
@@ -95,8 +101,9 @@ public class Board {
     public void resetMove(SearchNode node) {
         if (node == null) return;
         for (Cell cell : node.moves) {
+            hash ^= zobrist.key(cell.i, cell.j, B[cell.i][cell.j]);
             B[cell.i][cell.j] = MNKCellState.FREE;
-            FC.add(new MNKCell(cell.i, cell.j));
+            FC.add(cell.getCell());
             currentPlayer = (currentPlayer + 1) % 2;
         }
     }
@@ -217,6 +224,7 @@ public class Board {
     public void reset() {
         currentPlayer = 0;
         gameState = MNKGameState.OPEN;
+        hash = 0;
         initBoard();
         initFreeCellList();
         initMarkedCellList();
@@ -285,10 +293,11 @@ public class Board {
         } else if (B[i][j] != MNKCellState.FREE) {
             throw new IllegalStateException("Cell " + i + "," + j + " is not free");
         } else {
-            MNKCell oldc = new MNKCell(i, j, B[i][j]);
-            MNKCell newc = new MNKCell(i, j, Player[currentPlayer]);
+            MNKCell oldc = MNKCell.valueOf(i, j, B[i][j]);
+            MNKCell newc = MNKCell.valueOf(i, j, Player[currentPlayer]);
 
             B[i][j] = Player[currentPlayer];
+            hash ^= zobrist.key(i, j, currentPlayer);
 
             FC.remove(oldc);
             MC.add(newc);
@@ -314,8 +323,9 @@ public class Board {
             throw new IllegalStateException("No move to undo");
         } else {
             MNKCell oldc = MC.removeLast();
-            MNKCell newc = new MNKCell(oldc.i, oldc.j, MNKCellState.FREE);
+            MNKCell newc = MNKCell.valueOf(oldc.i, oldc.j, MNKCellState.FREE);
             restoreHeuristic(oldc.i, oldc.j);
+            hash ^= zobrist.key(oldc.i, oldc.j, B[oldc.i][oldc.j]);
             B[oldc.i][oldc.j] = MNKCellState.FREE;
 
             FC.add(newc);
@@ -324,6 +334,13 @@ public class Board {
         }
     }
 
+    /**
+     * @return la chiave di Zobrist della posizione attuale, O(1)
+     */
+    public long hash() {
+        return hash;
+    }
+
     public MNKCell[] getMarkedCells() {
         return MC.toArray(new MNKCell[MC.size()]);
     }
@@ -344,7 +361,7 @@ public class Board {
         this.FC.clear();
         for (int i = 0; i < M; i++)
             for (int j = 0; j < N; j++)
-                this.FC.add(new MNKCell(i, j));
+                this.FC.add(MNKCell.valueOf(i, j, MNKCellState.FREE));
     }
 
     private void initMarkedCellList() {
@@ -18,7 +18,7 @@ public class Cell {
 
     @Override
     public int hashCode() {
-        return this.toString().hashCode();
+        return (this.i << 16) ^ this.j;
     }
 
     @Override
@@ -27,6 +27,6 @@ public class Cell {
     }
 
     public MNKCell getCell() {
-        return new MNKCell(this.i, this.j, MNKCellState.FREE);
+        return MNKCell.valueOf(this.i, this.j, MNKCellState.FREE);
     }
 }
@@ -132,7 +132,7 @@ public class IterativePlayer implements mnkgame.MNKPlayer {
         int bestValue = Integer.MIN_VALUE;
         for (SearchNode m : moves) {
             if (m.value > bestValue) {
-                best = new MNKCell(m.moves[0].i, m.moves[0].j);
+                best = m.moves[0].getCell();
                 bestValue = m.value;
             }
         }
@@ -3,6 +3,7 @@ package mnkgame.bigheuristics;
 import java.util.HashMap;
 import java.util.PriorityQueue;
 
+import mnkgame.MNKBudget;
 import mnkgame.MNKCell;
 import mnkgame.MNKGameState;
 import mnkgame.MNKCellState;
@@ -13,11 +14,12 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
     private MNKGameState yourWin;
     private int TIMEOUT;
     private long timeStart;
+    private MNKBudget budget;  // orologio del turno, a nodi se il tester lo chiede
     private MNKCellState myState;
     private MNKCellState yourState;
 
     private PriorityQueue<SearchNode> queue;
-    private HashMap<SearchNode, SearchNode> registeredNodes;
+    private HashMap<Long, SearchNode> registeredNodes;  // nodi già visti, per chiave di Zobrist della posizione
     private SearchNode[] moves;  // contiene solamente i root nodes, fra cui poi andare a scegliere
     private int timeoutFrac;  // frazione di 100 per cui checkare il timeout
     int moves_counter;
@@ -37,7 +39,8 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
     }
 
     private boolean hasTimeRunOut() {
-        return (System.currentTimeMillis() - timeStart) / 1000.0 > TIMEOUT * (timeoutFrac / 100.0);
+        budget.spend(1);  // si controlla una volta per nodo espanso
+        return (budget.currentTimeMillis() - timeStart) / 1000.0 > TIMEOUT * (timeoutFrac / 100.0);
     }
 
     private MNKCell findWinCellAndCreateQueue(MNKCell[] freeCells) {
@@ -76,10 +79,11 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
 
     // utilizziamo la board globale per aggiungere e togliere e ci fermiamo quando uno vince
     public MNKCell selectCell(MNKCell[] freeCells, MNKCell[] movedCells) {
-        timeStart = System.currentTimeMillis();
+        budget = MNKBudget.current();
+        timeStart = budget.currentTimeMillis();
         moves = new SearchNode[freeCells.length];
         queue = new PriorityQueue<SearchNode>();
-        registeredNodes = new HashMap<SearchNode, SearchNode>(freeCells.length * 10);
+        registeredNodes = new HashMap<Long, SearchNode>(freeCells.length * 10);
         moves_counter = 0;
 
         if (movedCells.length > 0) {
@@ -113,10 +117,10 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
                 } else if (state == MNKGameState.DRAW) {
                     curr.backtrack(value);
                 } else {
-                    SearchNode child = curr.expand(cell.i, cell.j, value);
-                    // essendo inserita nella queue, allora è necessariamente contenuto
-                    if (registeredNodes.containsKey(child)) {  // O(1) check
-                        SearchNode childNode = registeredNodes.get(child);  // O(1) retrieval
+                    // la stessa posizione raggiunta con un altro ordine di mosse ha la stessa chiave
+                    long key = B.hash();
+                    SearchNode childNode = registeredNodes.get(key);  // O(1), non dipende dalla depth
+                    if (childNode != null) {
                         if (value > childNode.value) {
                             childNode.value = value;
                             childNode.backtrack(value);
@@ -126,7 +130,8 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
                             queue.add(childNode);
                         }  // else do nothing
                     } else {
-                        registeredNodes.put(child, child);
+                        SearchNode child = curr.expand(cell.i, cell.j, value);
+                        registeredNodes.put(key, child);
                         queue.add(child);
                     }       
                 }
@@ -141,7 +146,7 @@ public class IterativePlayerV2 implements mnkgame.MNKPlayer {
         int bestValue = Integer.MIN_VALUE;
         for (SearchNode m : moves) {
             if (m.value > bestValue) {
-                best = new MNKCell(m.moves[0].i, m.moves[0].j);
+                best = m.moves[0].getCell();
                 bestValue = m.value;
             }
         }
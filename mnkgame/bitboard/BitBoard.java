@@ -0,0 +1,316 @@
+package mnkgame.bitboard;
+
+import java.lang.IllegalStateException;
+import java.lang.IndexOutOfBoundsException;
+import java.util.Arrays;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.Zobrist;
+
+/**
+ * Board per un (M,N,K)-game con lo stesso contratto di markCell/unmarkCell/gameState
+ * della {@link mnkgame.MNKBoard}, ma rappresentata con bitboard <code>long[]</code>.
+ * <p>
+ * Per ogni giocatore si tiene una bitboard per ciascuna delle 4 direzioni di allineamento
+ * (orizzontale, verticale, diagonale, antidiagonale). In ogni bitboard le celle di una stessa
+ * linea occupano bit consecutivi e fra due linee c'è sempre almeno un bit a zero, quindi una
+ * sequenza di 1 non può mai attraversare due linee diverse. Il controllo di K-in-a-row sulla cella
+ * appena marcata si riduce a contare i bit a 1 consecutivi sopra e sotto la sua posizione
+ * con shift e maschere, costo O(1) per direzione (per K &lt;= 64).
+ * </p>
+ * <p>
+ * Nessuna operazione di markCell/unmarkCell alloca memoria.
+ * </p>
+ */
+public class BitBoard {
+    public final int M;
+    public final int N;
+    public final int K;
+
+    // direzioni, stesso ordine usato dalle altre board
+    private static final int HORIZONTAL = 0;
+    private static final int VERTICAL = 1;
+    private static final int DIAGONAL = 2;
+    private static final int ANTIDIAGONAL = 3;
+
+    private static final byte FREE = 0;
+
+    private static final MNKCellState[] STATES = {MNKCellState.FREE, MNKCellState.P1, MNKCellState.P2};
+    private static final MNKGameState[] WIN = {MNKGameState.WINP1, MNKGameState.WINP2};
+
+    /**
+     * bits[player][direzione] è la bitboard del giocatore per quella direzione
+     */
+    private final long[][][] bits;
+
+    /**
+     * offset[direzione][i * N + j] è la posizione del bit della cella (i, j)
+     * nella bitboard di quella direzione
+     */
+    private final int[][] offset;
+
+    private final byte[] cells; // 0 = libera, 1 = P1, 2 = P2
+    private final int[] moves;  // storia delle mosse come indice i * N + j
+    private int movesCount;
+
+    private int currentPlayer; // currentPlayer plays next move
+    private MNKGameState gameState;
+
+    private final Zobrist zobrist;
+    private long hash;  // chiave di Zobrist della posizione
+
+    /**
+     * Create a board of size MxN and initialize the game parameters
+     *
+     * @param M Board rows
+     * @param N Board columns
+     * @param K Number of symbols to be aligned (horizontally, vertically, diagonally) for a win
+     *
+     * @throws IllegalArgumentException If M,N,K are smaller than  1
+     */
+    public BitBoard(int M, int N, int K) throws IllegalArgumentException {
+        if (M <= 0)
+            throw new IllegalArgumentException("M cannot be smaller than 1");
+        if (N <= 0)
+            throw new IllegalArgumentException("N cannot be smaller than 1");
+        if (K <= 0)
+            throw new IllegalArgumentException("K cannot be smaller than 1");
+
+        this.M = M;
+        this.N = N;
+        this.K = K;
+
+        // lunghezza in bit di ogni layout, compreso il bit separatore fra le linee
+        int[] size = {
+            M * (N + 1),
+            N * (M + 1),
+            (M + N - 1) * (M + 1),
+            (M + N - 1) * (M + 1)};
+
+        offset = new int[4][M * N];
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                int idx = i * N + j;
+                offset[HORIZONTAL][idx] = i * (N + 1) + j;
+                offset[VERTICAL][idx] = j * (M + 1) + i;
+                offset[DIAGONAL][idx] = (i - j + N - 1) * (M + 1) + i;
+                offset[ANTIDIAGONAL][idx] = (i + j) * (M + 1) + i;
+            }
+        }
+
+        bits = new long[2][4][];
+        for (int p = 0; p < 2; p++)
+            for (int dir = 0; dir < 4; dir++)
+                bits[p][dir] = new long[(size[dir] >>> 6) + 1];
+
+        cells = new byte[M * N];
+        moves = new int[M * N];
+        zobrist = new Zobrist(M, N);
+
+        reset();
+    }
+
+    /**
+     * Resets the board
+     */
+    public void reset() {
+        for (int p = 0; p < 2; p++)
+            for (int dir = 0; dir < 4; dir++)
+                Arrays.fill(bits[p][dir], 0L);
+        Arrays.fill(cells, FREE);
+        movesCount = 0;
+        currentPlayer = 0;
+        gameState = MNKGameState.OPEN;
+        hash = 0;
+    }
+
+    /**
+     * Returns the state of cell <code>i,j</code>
+     *
+     * @throws IndexOutOfBoundsException If <code>i,j</code> are out of matrix bounds
+     */
+    public MNKCellState cellState(int i, int j) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= M || j < 0 || j >= N)
+            throw new IndexOutOfBoundsException("Indexes " + i + "," + j + " are out of matrix bounds");
+        return STATES[cells[i * N + j]];
+    }
+
+    /**
+     * Returns the current state of the game.
+     *
+     * @return MNKGameState enumeration constant (OPEN,WINP1,WINP2,DRAW)
+     */
+    public MNKGameState gameState() {
+        return gameState;
+    }
+
+    /**
+     * Returns the id of the player allowed to play next move.
+     *
+     * @return 0 (first player) or 1 (second player)
+     */
+    public int currentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * @return la chiave di Zobrist della posizione attuale, O(1)
+     */
+    public long hash() {
+        return hash;
+    }
+
+    public int getFreeCellsCount() {
+        return M * N - movesCount;
+    }
+
+    public int getMarkedCellsCount() {
+        return movesCount;
+    }
+
+    /**
+     * @return l'indice i * N + j della k-esima mossa giocata
+     */
+    public int getMarkedCell(int k) {
+        return moves[k];
+    }
+
+    /**
+     * Marks the selected cell for the current player
+     *
+     * @param i i-th row
+     * @param j j-th column
+     *
+     * @return State of the game after the move
+     *
+     * @throws IndexOutOfBoundsException If <code>i,j</code> are out of matrix bounds
+     * @throws IllegalStateException If the game already ended or if <code>i,j</code> is not a free cell
+     */
+    public MNKGameState markCell(int i, int j) throws IndexOutOfBoundsException, IllegalStateException {
+        if (gameState != MNKGameState.OPEN) {
+            throw new IllegalStateException("Game ended!");
+        } else if (i < 0 || i >= M || j < 0 || j >= N) {
+            throw new IndexOutOfBoundsException("Indexes " + i + "," + j + " out of matrix bounds");
+        } else if (cells[i * N + j] != FREE) {
+            throw new IllegalStateException("Cell " + i + "," + j + " is not free");
+        }
+
+        int idx = i * N + j;
+        int p = currentPlayer;
+        long[][] own = bits[p];
+        boolean win = false;
+        for (int dir = 0; dir < 4; dir++) {
+            int pos = offset[dir][idx];
+            own[dir][pos >>> 6] |= 1L << pos;
+            if (!win && isWinningRun(own[dir], pos))
+                win = true;
+        }
+
+        cells[idx] = (byte) (p + 1);
+        moves[movesCount++] = idx;
+        hash ^= zobrist.key(i, j, p);
+        currentPlayer = 1 - p;
+
+        if (win)
+            gameState = WIN[p];
+        else if (movesCount == M * N)
+            gameState = MNKGameState.DRAW;
+
+        return gameState;
+    }
+
+    /**
+     * Undoes last move
+     *
+     * @throws IllegalStateException If there is no move to undo
+     */
+    public void unmarkCell() throws IllegalStateException {
+        if (movesCount == 0)
+            throw new IllegalStateException("No move to undo");
+
+        int idx = moves[--movesCount];
+        int p = cells[idx] - 1;
+        long[][] own = bits[p];
+        for (int dir = 0; dir < 4; dir++) {
+            int pos = offset[dir][idx];
+            own[dir][pos >>> 6] &= ~(1L << pos);
+        }
+
+        cells[idx] = FREE;
+        hash ^= zobrist.key(idx / N, idx % N, p);
+        currentPlayer = p;
+        gameState = MNKGameState.OPEN;
+    }
+
+    /**
+     * @return i 64 bit della bitboard a partire dal bit <code>from</code> (bit 0 = <code>from</code>),
+     * i bit fuori dalla bitboard valgono 0
+     */
+    private static long readWord(long[] b, int from) {
+        if (from < 0) {
+            // serve solo per le letture verso il basso vicino all'inizio
+            return from <= -64 ? 0L : readWord(b, 0) << -from;
+        }
+        int word = from >>> 6;
+        if (word >= b.length)
+            return 0L;
+        int shift = from & 63;
+        long w = b[word] >>> shift;
+        if (shift != 0 && word + 1 < b.length)
+            w |= b[word + 1] << (64 - shift);
+        return w;
+    }
+
+    /**
+     * Controlla se la sequenza di 1 che passa per il bit pos è lunga almeno K.
+     * Con una sola lettura si ha una finestra di 64 bit con pos al bit 31: shiftando
+     * a destra e a sinistra si contano gli 1 sopra e sotto pos. Solo se la sequenza
+     * esce dalla finestra si continua a contare parola per parola.
+     */
+    private boolean isWinningRun(long[] b, int pos) {
+        long w = readWord(b, pos - 31);
+        int above = Long.numberOfTrailingZeros(~(w >>> 32)); // al massimo 32
+        int below = Long.numberOfLeadingZeros(~(w << 33));   // al massimo 31
+        if (above + below + 1 >= K)
+            return true;
+        if (above < 32 && below < 31)
+            return false;
+        return onesAbove(b, pos + 1) + onesBelow(b, pos - 1) + 1 >= K;
+    }
+
+    // numero di bit a 1 consecutivi a partire da from verso l'alto
+    private static int onesAbove(long[] b, int from) {
+        int count = 0;
+        while (true) {
+            int run = Long.numberOfTrailingZeros(~readWord(b, from));
+            count += run;
+            if (run < 64)
+                return count;
+            from += 64;
+        }
+    }
+
+    // numero di bit a 1 consecutivi a partire da from verso il basso
+    private static int onesBelow(long[] b, int from) {
+        int count = 0;
+        while (from >= 0) {
+            int run = Long.numberOfLeadingZeros(~readWord(b, from - 63));
+            count += run;
+            if (run < 64)
+                return count;
+            from -= 64;
+        }
+        return count;
+    }
+
+    public void print() {
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                System.out.print(cells[i * N + j] + " ");
+            }
+            System.out.println();
+        }
+        System.out.println();
+    }
+}
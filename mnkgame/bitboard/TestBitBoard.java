@@ -0,0 +1,117 @@
+package mnkgame.bitboard;
+
+import java.util.Random;
+
+import mnkgame.MNKBoard;
+import mnkgame.MNKGameState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestBitBoard {
+    private static final int[][] GAMES = {
+        {3, 3, 3},
+        {4, 4, 3},
+        {5, 4, 4},
+        {6, 7, 4},
+        {7, 7, 5},
+        {10, 10, 5},
+        {50, 50, 10},
+        {70, 70, 10},
+        {70, 70, 70},
+        {3, 70, 3},
+    };
+
+    // gioca una partita casuale su entrambe le board, controllando che lo stato sia sempre lo stesso
+    private void playRandomGame(int M, int N, int K, Random rand) {
+        MNKBoard expected = new MNKBoard(M, N, K);
+        BitBoard board = new BitBoard(M, N, K);
+        int played = 0;
+
+        while (expected.gameState() == MNKGameState.OPEN) {
+            int i = rand.nextInt(M), j = rand.nextInt(N);
+            if (board.cellState(i, j) != expected.cellState(i, j))
+                throw new AssertionError("different cell state in " + i + "," + j);
+            if (expected.cellState(i, j) != mnkgame.MNKCellState.FREE)
+                continue;
+
+            MNKGameState state = board.markCell(i, j);
+            MNKGameState expectedState = expected.markCell(i, j);
+            assert state == expectedState;
+            assert board.currentPlayer() == expected.currentPlayer();
+            assert board.hash() == expected.hash();
+            played++;
+        }
+
+        assert board.getMarkedCellsCount() == played;
+        for (int k = 0; k < played; k++) {
+            board.unmarkCell();
+            expected.unmarkCell();
+            assert board.gameState() == MNKGameState.OPEN;
+            assert board.currentPlayer() == expected.currentPlayer();
+        }
+        assert board.getFreeCellsCount() == M * N;
+        assert board.hash() == 0;
+    }
+
+    @Test
+    @DisplayName("Random games have the same game states of MNKBoard")
+    public void testRandomGames() {
+        Random rand = new Random(42);
+        for (int[] game : GAMES) {
+            for (int round = 0; round < 20; round++) {
+                playRandomGame(game[0], game[1], game[2], rand);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Transposed move orders give the same Zobrist key")
+    public void testTranspositionHash() {
+        BitBoard first = new BitBoard(5, 5, 4);
+        BitBoard second = new BitBoard(5, 5, 4);
+        int[][] moves = {{0, 0}, {1, 1}, {2, 2}, {3, 3}, {4, 0}};
+        int[][] transposed = {{4, 0}, {3, 3}, {2, 2}, {1, 1}, {0, 0}};
+        for (int k = 0; k < moves.length; k++) {
+            first.markCell(moves[k][0], moves[k][1]);
+            second.markCell(transposed[k][0], transposed[k][1]);
+        }
+        assert first.hash() == second.hash();
+
+        // stessa cella ma giocatore diverso
+        BitBoard other = new BitBoard(5, 5, 4);
+        other.markCell(1, 1);
+        other.markCell(0, 0);
+        BitBoard swapped = new BitBoard(5, 5, 4);
+        swapped.markCell(0, 0);
+        swapped.markCell(1, 1);
+        assert other.hash() != swapped.hash();
+    }
+
+    @Test
+    @DisplayName("Detects wins on all four directions near the borders")
+    public void testBorderWins() {
+        // orizzontale sull'ultima riga
+        BitBoard board = new BitBoard(4, 4, 4);
+        int[][] moves = {{3, 0}, {0, 0}, {3, 1}, {0, 1}, {3, 2}, {0, 2}, {3, 3}};
+        for (int[] m : moves) board.markCell(m[0], m[1]);
+        assert board.gameState() == MNKGameState.WINP1;
+
+        // verticale sull'ultima colonna
+        board = new BitBoard(4, 4, 4);
+        moves = new int[][] {{0, 0}, {0, 3}, {1, 0}, {1, 3}, {2, 1}, {2, 3}, {3, 1}, {3, 3}};
+        for (int[] m : moves) board.markCell(m[0], m[1]);
+        assert board.gameState() == MNKGameState.WINP2;
+
+        // antidiagonale, le linee vicine non devono essere contate
+        board = new BitBoard(4, 4, 4);
+        moves = new int[][] {{0, 3}, {0, 0}, {1, 2}, {0, 1}, {2, 1}, {1, 0}, {3, 0}};
+        for (int[] m : moves) board.markCell(m[0], m[1]);
+        assert board.gameState() == MNKGameState.WINP1;
+
+        // diagonale che non arriva a K
+        board = new BitBoard(4, 4, 4);
+        moves = new int[][] {{1, 0}, {0, 0}, {2, 1}, {0, 1}, {3, 2}};
+        for (int[] m : moves) board.markCell(m[0], m[1]);
+        assert board.gameState() == MNKGameState.OPEN;
+    }
+}
@@ -0,0 +1,148 @@
+package mnkgame.book;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.Symmetry;
+import mnkgame.bitboard.BitBoard;
+import mnkgame.solver.DfpnSolver;
+
+/**
+ * Genera offline il libro delle aperture di una configurazione: visita tutte le posizioni
+ * fino a un numero di mosse, una sola per classe di simmetria, le risolve con
+ * {@link DfpnSolver} e scrive valore e mossa migliore di quelle dimostrate nel formato
+ * letto da {@link OpeningBook}.
+ * <p>
+ * Uso: <code>java mnkgame.book.BookGenerator M N K mosse file [ms per posizione]</code>
+ * </p>
+ */
+public class BookGenerator {
+    private static final long DEFAULT_MILLIS = 1000;
+    private static final int TABLE_LOG2_SIZE = 22;
+
+    private final BitBoard board;
+    private final Symmetry symmetry;
+    private final DfpnSolver solver;
+    private final HashSet<Long> visited;
+    private final int plies;
+    private final long millisPerPosition;
+
+    private long[] keys;
+    private int[] entries;
+    private int count;
+    private int unknown;
+
+    private BookGenerator(int M, int N, int K, int plies, long millisPerPosition) {
+        this.board = new BitBoard(M, N, K);
+        this.symmetry = new Symmetry(M, N);
+        this.solver = new DfpnSolver(TABLE_LOG2_SIZE);
+        this.visited = new HashSet<Long>();
+        this.plies = plies;
+        this.millisPerPosition = millisPerPosition;
+        this.keys = new long[1024];
+        this.entries = new int[1024];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: BookGenerator <M> <N> <K> <plies> <file> [millis per position]");
+            System.exit(1);
+        }
+        int M = Integer.parseInt(args[0]), N = Integer.parseInt(args[1]), K = Integer.parseInt(args[2]);
+        int plies = Integer.parseInt(args[3]);
+        long millis = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_MILLIS;
+
+        long start = System.currentTimeMillis();
+        BookGenerator generator = new BookGenerator(M, N, K, plies, millis);
+        generator.visit();
+        generator.write(Paths.get(args[4]));
+        System.out.printf("%dx%dx%d fino a %d mosse: %d posizioni scritte, %d non risolte, %.1fs%n",
+                M, N, K, plies, generator.count, generator.unknown, (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    /**
+     * Genera il libro e lo scrive in file
+     *
+     * @return numero di posizioni scritte
+     */
+    public static int generate(int M, int N, int K, int plies, long millisPerPosition, Path file) throws IOException {
+        BookGenerator generator = new BookGenerator(M, N, K, plies, millisPerPosition);
+        generator.visit();
+        generator.write(file);
+        return generator.count;
+    }
+
+    // visita in post-ordine: le posizioni più avanti sono più facili e riempiono la tabella del solver
+    private void visit() {
+        if (!visited.add(symmetry.key()))
+            return;
+
+        if (board.getMarkedCellsCount() < plies) {
+            for (int cell = 0; cell < board.M * board.N; cell++) {
+                if (board.cellState(cell / board.N, cell % board.N) != MNKCellState.FREE)
+                    continue;
+                int player = board.currentPlayer();
+                if (board.markCell(cell / board.N, cell % board.N) == MNKGameState.OPEN) {
+                    symmetry.mark(cell, player);
+                    visit();
+                    symmetry.unmark(cell, player);
+                }
+                board.unmarkCell();
+            }
+        }
+
+        DfpnSolver.Result result = solver.solve(board, System.currentTimeMillis() + millisPerPosition);
+        int value;
+        if (result == DfpnSolver.Result.WIN)
+            value = OpeningBook.WIN;
+        else if (result == DfpnSolver.Result.DRAW)
+            value = OpeningBook.DRAW;
+        else if (result == DfpnSolver.Result.LOSS)
+            value = OpeningBook.LOSS;
+        else {
+            unknown++;
+            return;
+        }
+
+        // la mossa si salva nell'orientamento della posizione canonica
+        int move = symmetry.map(symmetry.keySymmetry(), solver.getBestMove());
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            entries = Arrays.copyOf(entries, count * 2);
+        }
+        keys[count] = symmetry.key();
+        entries[count] = OpeningBook.entry(value, move);
+        count++;
+    }
+
+    private void write(Path file) throws IOException {
+        Integer[] order = new Integer[count];
+        for (int k = 0; k < count; k++)
+            order[k] = k;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(board.M);
+            out.writeInt(board.N);
+            out.writeInt(board.K);
+            out.writeInt(count);
+            out.writeLong(0);  // riservato
+            for (int k : order) {
+                out.writeLong(keys[k]);
+                out.writeInt(entries[k]);
+            }
+        }
+    }
+}
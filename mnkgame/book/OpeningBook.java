@@ -0,0 +1,92 @@
+package mnkgame.book;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Libro delle aperture scritto da {@link BookGenerator}, letto con un file mappato in
+ * memoria: l'apertura non legge niente e ogni ricerca è una ricerca binaria direttamente
+ * sulle pagine del file, senza copiare le entry.
+ * <p>
+ * Formato del file (big endian): un header di {@link #HEADER_SIZE} byte con magic, versione,
+ * M, N, K e numero di entry, poi le entry ordinate per chiave. Ogni entry è la chiave
+ * canonica della posizione ({@link mnkgame.Symmetry#key()}) seguita da un int con il
+ * valore per il giocatore di turno e la mossa migliore, nell'orientamento canonico.
+ * </p>
+ */
+public class OpeningBook {
+    public static final int MAGIC = 0x4D4E4B42;  // "MNKB"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int ENTRY_SIZE = 12;
+
+    // valori per il giocatore di turno
+    public static final int WIN = 0;
+    public static final int DRAW = 1;
+    public static final int LOSS = 2;
+
+    public static final int NOT_FOUND = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    /**
+     * @throws IOException se il file non c'è, non è un libro o è di un'altra configurazione
+     */
+    public OpeningBook(Path file, int M, int N, int K) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException(file + " is not an opening book");
+        if (buffer.getInt(8) != M || buffer.getInt(12) != N || buffer.getInt(16) != K)
+            throw new IOException(file + " is not a book for " + M + "x" + N + "x" + K);
+        count = buffer.getInt(20);
+        if ((long) HEADER_SIZE + (long) count * ENTRY_SIZE > buffer.capacity())
+            throw new IOException(file + " is truncated");
+    }
+
+    /**
+     * @return l'entry della posizione (da leggere con {@link #value(int)} e {@link #move(int)}),
+     * NOT_FOUND se non è nel libro
+     */
+    public int probe(long key) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long current = buffer.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+            if (current < key)
+                low = mid + 1;
+            else if (current > key)
+                high = mid - 1;
+            else
+                return buffer.getInt(HEADER_SIZE + mid * ENTRY_SIZE + 8);
+        }
+        return NOT_FOUND;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return WIN, DRAW o LOSS per il giocatore di turno
+     */
+    public static int value(int entry) {
+        return entry >>> 16;
+    }
+
+    /**
+     * @return la mossa migliore <code>i * N + j</code> nell'orientamento canonico
+     */
+    public static int move(int entry) {
+        return entry & 0xFFFF;
+    }
+
+    static int entry(int value, int move) {
+        return (value << 16) | move;
+    }
+}
@@ -0,0 +1,120 @@
+package mnkgame.book;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.Symmetry;
+import mnkgame.bitboard.BitBoard;
+import mnkgame.solver.DfpnSolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestOpeningBook {
+    @Test
+    @DisplayName("Symmetric positions have the same canonical key")
+    public void testSymmetry() {
+        int[][] sizes = {{5, 5}, {4, 6}};
+        Random rand = new Random(5);
+        for (int[] size : sizes) {
+            int M = size[0], N = size[1];
+            for (int round = 0; round < 50; round++) {
+                Symmetry position = new Symmetry(M, N);
+                int[] cells = new int[6];
+                for (int k = 0; k < cells.length; k++) {
+                    cells[k] = rand.nextInt(M * N);  // anche ripetute: lo XOR le toglie in entrambe
+                    position.mark(cells[k], k & 1);
+                }
+
+                for (int s = 0; s < position.count(); s++) {
+                    Symmetry image = new Symmetry(M, N);
+                    for (int k = 0; k < cells.length; k++) {
+                        assert position.inverse(s, position.map(s, cells[k])) == cells[k];
+                        image.mark(position.map(s, cells[k]), k & 1);
+                    }
+                    assert image.key() == position.key();
+                    assert image.key(0) == position.key(s);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Equivalent moves have the same representative")
+    public void testRepresentative() {
+        Symmetry symmetry = new Symmetry(3, 3);
+        assert symmetry.isSymmetric();
+        // board vuota: angoli, lati e centro
+        for (int cell = 0; cell < 9; cell++)
+            assert symmetry.representative(cell) == (cell == 4 ? 4 : cell % 2 == 0 ? 0 : 1);
+
+        symmetry.mark(0, 0);  // resta solo lo specchio sulla diagonale principale
+        assert symmetry.isSymmetric();
+        assert symmetry.representative(3) == 1 && symmetry.representative(7) == 5;
+        assert !symmetry.isRedundant(8) && !symmetry.isRedundant(2) && symmetry.isRedundant(6);
+
+        symmetry.mark(1, 1);
+        assert !symmetry.isSymmetric();
+        for (int cell = 0; cell < 9; cell++)
+            assert !symmetry.isRedundant(cell);
+
+        // su una board rettangolare non ci sono le simmetrie diagonali
+        Symmetry rectangle = new Symmetry(2, 3);
+        assert rectangle.count() == 4;
+        assert rectangle.representative(5) == 0 && rectangle.representative(4) == 1;
+    }
+
+    @Test
+    @DisplayName("Book of 3x3x3 agrees with the solver in every orientation")
+    public void testBook() throws IOException {
+        Path file = Files.createTempFile("mnk", ".book");
+        try {
+            int written = BookGenerator.generate(3, 3, 3, 9, 1000, file);
+            OpeningBook book = new OpeningBook(file, 3, 3, 3);
+            assert book.size() == written && written > 0;
+
+            DfpnSolver solver = new DfpnSolver(16);
+            Random rand = new Random(2);
+            for (int round = 0; round < 30; round++) {
+                BitBoard board = new BitBoard(3, 3, 3);
+                Symmetry symmetry = new Symmetry(3, 3);
+                while (board.gameState() == MNKGameState.OPEN) {
+                    int entry = book.probe(symmetry.key());
+                    assert entry != OpeningBook.NOT_FOUND;
+
+                    DfpnSolver.Result expected = solver.solve(board, Long.MAX_VALUE);
+                    assert OpeningBook.value(entry) == expected.ordinal();
+
+                    int move = symmetry.inverse(symmetry.keySymmetry(), OpeningBook.move(entry));
+                    assert board.cellState(move / 3, move % 3) == MNKCellState.FREE;
+                    if (expected != DfpnSolver.Result.LOSS) {
+                        // la mossa del libro mantiene il valore
+                        MNKGameState state = board.markCell(move / 3, move % 3);
+                        assert state != MNKGameState.OPEN || solver.solve(board, Long.MAX_VALUE)
+                                == (expected == DfpnSolver.Result.WIN ? DfpnSolver.Result.LOSS : DfpnSolver.Result.DRAW);
+                        board.unmarkCell();
+                    }
+
+                    int cell;
+                    do {
+                        cell = rand.nextInt(9);
+                    } while (board.cellState(cell / 3, cell % 3) != MNKCellState.FREE);
+                    symmetry.mark(cell, board.currentPlayer());
+                    board.markCell(cell / 3, cell % 3);
+                }
+            }
+
+            try {
+                new OpeningBook(file, 4, 4, 3);
+                assert false : "a book of another game must not open";
+            } catch (IOException e) {
+                // ok
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
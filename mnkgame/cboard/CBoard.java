@@ -2,6 +2,7 @@ package mnkgame.cboard;
 
 import mnkgame.MNKCellState;
 import mnkgame.MNKGameState;
+import mnkgame.Zobrist;
 
 public class CBoard {
     private final CNode<CCell>[][] board;
@@ -11,6 +12,8 @@ public class CBoard {
     protected final int M, N, K;
     private final MNKCellState[] player = {MNKCellState.P1, MNKCellState.P2};
     private int currentPlayer;
+    private final Zobrist zobrist;
+    private long hash;  // chiave di Zobrist della posizione
     private Position directions[] = {
         new Position(0, 1),
         new Position(1, 0),
@@ -27,6 +30,8 @@ public class CBoard {
         unionHistory = new CStack<>();
         board = (CNode<CCell>[][]) new CNode[M][N];
         currentPlayer = 0;
+        zobrist = new Zobrist(M, N);
+        hash = 0;
         for (int i = 0; i < M; i++) {
             for (int j = 0; j < N; j++) {
                 freeCell.pushHead(new CCell(i, j));
@@ -101,6 +106,7 @@ public class CBoard {
 
         CCell cell = nodeCell.getData();
         cell.setState(player[currentPlayer]);
+        hash ^= zobrist.key(cell.getPosition().getX(), cell.getPosition().getY(), currentPlayer);
         MNKGameState gameState = updateUnionFindAndGameState(cell);
         currentPlayer = 1 - currentPlayer;
 
@@ -117,6 +123,7 @@ public class CBoard {
         CNode<CCell> nodeCell = markedCell.pop();
         freeCell.reinsert(nodeCell);
         CCell cell = nodeCell.getData();
+        hash ^= zobrist.key(cell.getPosition().getX(), cell.getPosition().getY(), cell.getState());
         cell.setState(MNKCellState.FREE);
 
         CStack<UnionHistoryRecord> cellUnited = unionHistory.pop();
@@ -128,6 +135,13 @@ public class CBoard {
         currentPlayer = 1 - currentPlayer;
     }
 
+    /**
+     * @return la chiave di Zobrist della posizione attuale, O(1)
+     */
+    public long hash() {
+        return hash;
+    }
+
     public CRemoveReinsertList<CCell> getFreeCell() {
         return freeCell;
     }
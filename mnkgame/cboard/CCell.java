@@ -25,7 +25,7 @@ public class CCell {
     }
 
     public MNKCell toMNKCell() {
-        return new MNKCell(position.getX(), position.getY(), state);
+        return MNKCell.valueOf(position.getX(), position.getY(), state);
     }
 
     // getter and setter
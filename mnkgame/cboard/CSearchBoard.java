@@ -0,0 +1,74 @@
+package mnkgame.cboard;
+
+import mnkgame.MNKGameState;
+import mnkgame.parallel.SearchBoard;
+
+/**
+ * {@link CBoard} per la ricerca parallela: le mosse sono tutte le celle libere
+ * e non c'è euristica, le posizioni valgono solo vittoria, sconfitta o 0.
+ */
+public class CSearchBoard implements SearchBoard {
+    private final CBoard board;
+    private final int[] history;            // mosse come i * N + j
+    private final MNKGameState[] states;    // states[k] = stato dopo k mosse
+    private int movesCount;
+
+    public CSearchBoard(int M, int N, int K) {
+        board = new CBoard(M, N, K);
+        history = new int[M * N];
+        states = new MNKGameState[M * N + 1];
+        states[0] = MNKGameState.OPEN;
+        movesCount = 0;
+    }
+
+    public CBoard getBoard() {
+        return board;
+    }
+
+    public int generateMoves(int[] moves, int offset) {
+        int n = 0;
+        for (CCell cell : board.getFreeCell()) {
+            moves[offset + n++] = cell.getPosition().getX() * board.N + cell.getPosition().getY();
+        }
+        return n;
+    }
+
+    public int maxMoves() {
+        return board.M * board.N - movesCount;
+    }
+
+    public MNKGameState playMove(int move) {
+        MNKGameState state = board.markCell(move / board.N, move % board.N);
+        history[movesCount++] = move;
+        states[movesCount] = state;
+        return state;
+    }
+
+    public void undoMove() {
+        board.unmarkCell();
+        movesCount--;
+    }
+
+    public MNKGameState gameState() {
+        return states[movesCount];
+    }
+
+    public int evaluate() {
+        return 0;
+    }
+
+    public int movesCount() {
+        return movesCount;
+    }
+
+    public int getMove(int k) {
+        return history[k];
+    }
+
+    public SearchBoard copy() {
+        CSearchBoard copy = new CSearchBoard(board.M, board.N, board.K);
+        for (int k = 0; k < movesCount; k++)
+            copy.playMove(history[k]);
+        return copy;
+    }
+}
@@ -135,8 +135,8 @@ public class Board {
         } else if (B[i][j] != MNKCellState.FREE) {
             throw new IllegalStateException("Cell " + i + "," + j + " is not free");
         } else {
-            MNKCell oldc = new MNKCell(i, j, B[i][j]);
-            MNKCell newc = new MNKCell(i, j, Player[currentPlayer]);
+            MNKCell oldc = MNKCell.valueOf(i, j, B[i][j]);
+            MNKCell newc = MNKCell.valueOf(i, j, Player[currentPlayer]);
 
             B[i][j] = Player[currentPlayer];
 
@@ -162,7 +162,7 @@ public class Board {
             throw new IllegalStateException("No move to undo");
         } else {
             MNKCell oldc = MC.removeLast();
-            MNKCell newc = new MNKCell(oldc.i, oldc.j, MNKCellState.FREE);
+            MNKCell newc = MNKCell.valueOf(oldc.i, oldc.j, MNKCellState.FREE);
             B[oldc.i][oldc.j] = MNKCellState.FREE;
 
             FC.add(newc);
@@ -348,7 +348,7 @@ public class Board {
         this.FC.clear();
         for (int i = 0; i < M; i++)
             for (int j = 0; j < N; j++)
-                this.FC.add(new MNKCell(i, j));
+                this.FC.add(MNKCell.valueOf(i, j, MNKCellState.FREE));
     }
 
     private void initMarkedCellList() {
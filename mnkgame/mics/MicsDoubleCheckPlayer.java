@@ -126,7 +126,7 @@ public class MicsDoubleCheckPlayer implements mnkgame.MNKPlayer {
         // solo per gomoku, da togliere alla consegna TODO:
         if (isFirstMove && myState == MNKCellState.P1) {
             isFirstMove = false;
-            MNKCell cell = new MNKCell(7, 7);
+            MNKCell cell = MNKCell.valueOf(7, 7, MNKCellState.FREE);
             B.markCell(cell.i, cell.j);
             return cell;
         }
@@ -6,6 +6,8 @@ import java.util.Arrays;
 
 import mnkgame.MNKCellState;
 import mnkgame.MNKGameState;
+import mnkgame.Symmetry;
+import mnkgame.Zobrist;
 
 public class Board {
     public final int M;
@@ -37,6 +39,10 @@ public class Board {
     private int currentPlayer; // currentPlayer plays next move
     private MNKGameState gameState; // game state
 
+    private final Zobrist zobrist;
+    private long hash;  // chiave di Zobrist della posizione, aggiornata in markCell e unmarkCell
+    private final Symmetry symmetry;  // chiavi della posizione vista da ogni simmetria, come hash
+
     private MNKCellState allyPlayer;  // alleato di sé stesso
     private MNKCellState enemyPlayer;
     
@@ -63,6 +69,10 @@ public class Board {
         this.N = N;
         this.K = K;
 
+        zobrist = new Zobrist(M, N);
+        hash = 0;
+        symmetry = new Symmetry(M, N);
+
         sumAllyHeuristic = 0;
         sumEnemyHeuristic = 0;
 
@@ -161,6 +171,8 @@ public class Board {
         // Arrays.sort()
         // TODO: decidere come sortare le celle in modo da riprenderle in modo effettivo
         
+        hash ^= zobrist.key(i, j, currentPlayer);
+        symmetry.mark(i * N + j, currentPlayer);
         currentPlayer = 1 - currentPlayer;
 
         return gameState;
@@ -179,6 +191,8 @@ public class Board {
         HeuristicCell cell = allCells[freeCellsCount];
         
         // rollback della cella markata
+        hash ^= zobrist.key(cell.i, cell.j, cell.state);
+        symmetry.unmark(cell.i * N + cell.j, cell.state == MNKCellState.P1 ? 0 : 1);
         allCells[freeCellsCount].state = MNKCellState.FREE;
         int oldIndex = allCells[freeCellsCount].index;
         swapAllCellsByIndex(oldIndex, freeCellsCount);
@@ -445,9 +459,29 @@ public class Board {
 
 
     public void setCellState(int i, int j, MNKCellState state) {
+        hash ^= zobrist.key(i, j, B[i][j].state) ^ zobrist.key(i, j, state);
+        if (B[i][j].state != MNKCellState.FREE)
+            symmetry.unmark(i * N + j, B[i][j].state == MNKCellState.P1 ? 0 : 1);
+        if (state != MNKCellState.FREE)
+            symmetry.mark(i * N + j, state == MNKCellState.P1 ? 0 : 1);
         B[i][j].state = state;
     }
 
+    /**
+     * @return true se una cella libera più piccola è equivalente a (i, j) per una simmetria
+     * della posizione, quindi (i, j) si può non espandere
+     */
+    public boolean isRedundant(int i, int j) {
+        return symmetry.isRedundant(i * N + j);
+    }
+
+    /**
+     * @return la chiave di Zobrist della posizione attuale, O(1)
+     */
+    public long hash() {
+        return hash;
+    }
+
     public void setPlayer(MNKCellState player) {
         currentPlayer = player == MNKCellState.P1 ? 0 : 1;
     }
@@ -48,6 +48,6 @@ class HeuristicCell implements Comparable<HeuristicCell> {
     }
 
     public MNKCell toMNKCell() {
-        return new MNKCell(i, j, state);
+        return MNKCell.valueOf(i, j, state);
     }
 }
\ No newline at end of file
@@ -0,0 +1,412 @@
+package mnkgame.montecarlo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Nodi dell'albero di Montecarlo come struct of arrays: un nodo è un indice int e i suoi
+ * campi sono in array paralleli, divisi in blocchi da {@link #CHUNK_SIZE} nodi allocati
+ * solo quando servono, così crescere non copia niente.
+ * <p>
+ * Non ci sono oggetti per nodo e i figli non sono in una PriorityQueue: sono una lista
+ * (firstChild, nextSibling) e la selezione è una scansione. Un nodo pesa circa 52 byte
+ * e il numero di nodi ha un massimo, quando è pieno l'albero smette di crescere.
+ * </p>
+ * <p>
+ * Fra un turno e l'altro {@link #compact(int, int)} tiene solo il sottoalbero della nuova
+ * radice e lo sposta all'inizio del pool: i nodi scartati si riusano senza garbage. Se il
+ * sottoalbero è troppo grande si tolgono i figli dei nodi meno visitati.
+ * </p>
+ * <p>
+ * Media e 1 / sqrt(visite) si aggiornano in {@link #update(int, float)}, una volta per
+ * nodo del percorso, così l'UCB di un figlio nella scansione è solo una moltiplicazione
+ * e una somma: <code>value + C * sqrt(log(visite del padre)) * invSqrtVisits</code>.
+ * </p>
+ * <p>
+ * RAVE: ogni nodo tiene anche le statistiche All-Moves-As-First della sua mossa, cioè
+ * delle simulazioni passate dal padre in cui chi muove nel padre ha giocato la stessa
+ * cella più tardi. Stanno nel figlio e non in un array di M*N celle per nodo, così
+ * costano 12 byte per nodo anche su una board 70x70. Il valore usato nella selezione è
+ * <code>value = (1 - beta) * mean + beta * amafMean</code>, con
+ * <code>beta = sqrt(k / (3 * visits + k))</code> e k = {@link #RAVE_EQUIVALENCE}:
+ * all'inizio conta l'AMAF, poi sempre più le visite vere.
+ * </p>
+ * <p>
+ * Il pool si può usare da più thread insieme (MCTS tree-parallel): visite e vittorie si
+ * aggiornano con operazioni atomiche su VarHandle e un nuovo figlio si pubblica con una
+ * scrittura release di firstChild, letta con acquire. L'espansione (prenotare la cella e
+ * creare il figlio) è sincronizzata, è una volta per simulazione.
+ * Media e 1 / sqrt(visite) sono scritte senza sincronizzazione: leggerle un po' vecchie
+ * cambia solo di poco la selezione.
+ * </p>
+ */
+class NodePool {
+    static final int NONE = -1;
+
+    private static final VarHandle INT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // numero di visite in cui AMAF e visite vere pesano uguale, circa
+    static final int RAVE_EQUIVALENCE = 500;
+
+    // stato di un nodo: aperto, o risultato dimostrato per chi ha fatto la sua mossa
+    static final byte OPEN = 0;
+    static final byte WIN = 1;
+    static final byte DRAW = 2;
+    static final byte LOSS = 3;
+
+    private static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int maxChunks;
+    private int size;
+
+    private int[][] move;         // cella i * N + j della mossa che porta al nodo
+    private int[][] parent;
+    private int[][] firstChild;
+    private int[][] nextSibling;
+    private int[][] nextCell;     // prossima cella di getGreatKCell da espandere
+    private int[][] visits;       // comprese le virtual loss ancora in corso
+    private int[][] wins;         // mezzi punti, dal punto di vista di chi ha fatto la mossa del nodo
+    private float[][] mean;       // wins / visits
+    private float[][] invSqrtVisits;
+    private int[][] amafVisits;
+    private int[][] amafWins;     // mezzi punti, come wins
+    private float[][] value;      // media di visite e AMAF pesata con beta
+    private byte[][] status;
+
+    private int[] remap = new int[0];  // nuovo indice di ogni nodo in compact, NONE se scartato
+
+    /**
+     * @param maxNodes numero massimo di nodi, arrotondato a un multiplo di CHUNK_SIZE
+     */
+    NodePool(int maxNodes) {
+        maxChunks = Math.max(1, (maxNodes + CHUNK_MASK) >>> CHUNK_BITS);
+        move = new int[maxChunks][];
+        parent = new int[maxChunks][];
+        firstChild = new int[maxChunks][];
+        nextSibling = new int[maxChunks][];
+        nextCell = new int[maxChunks][];
+        visits = new int[maxChunks][];
+        wins = new int[maxChunks][];
+        mean = new float[maxChunks][];
+        invSqrtVisits = new float[maxChunks][];
+        amafVisits = new int[maxChunks][];
+        amafWins = new int[maxChunks][];
+        value = new float[maxChunks][];
+        status = new byte[maxChunks][];
+        size = 0;
+    }
+
+    /**
+     * Crea un nodo, primo nella lista dei figli di parent
+     *
+     * @param parent NONE per una radice
+     * @return l'indice del nodo, NONE se non c'è più spazio
+     */
+    synchronized int newNode(int parent, int move) {
+        if (size == maxChunks * CHUNK_SIZE)
+            return NONE;
+
+        int chunk = size >>> CHUNK_BITS, k = size & CHUNK_MASK;
+        if (this.move[chunk] == null) {
+            this.move[chunk] = new int[CHUNK_SIZE];
+            this.parent[chunk] = new int[CHUNK_SIZE];
+            firstChild[chunk] = new int[CHUNK_SIZE];
+            nextSibling[chunk] = new int[CHUNK_SIZE];
+            nextCell[chunk] = new int[CHUNK_SIZE];
+            visits[chunk] = new int[CHUNK_SIZE];
+            wins[chunk] = new int[CHUNK_SIZE];
+            mean[chunk] = new float[CHUNK_SIZE];
+            invSqrtVisits[chunk] = new float[CHUNK_SIZE];
+            amafVisits[chunk] = new int[CHUNK_SIZE];
+            amafWins[chunk] = new int[CHUNK_SIZE];
+            value[chunk] = new float[CHUNK_SIZE];
+            status[chunk] = new byte[CHUNK_SIZE];
+        }
+
+        int node = size++;
+        this.move[chunk][k] = move;
+        this.parent[chunk][k] = parent;
+        firstChild[chunk][k] = NONE;
+        nextCell[chunk][k] = 0;
+        visits[chunk][k] = 0;
+        wins[chunk][k] = 0;
+        mean[chunk][k] = 0;
+        invSqrtVisits[chunk][k] = Float.MAX_VALUE;  // non infinito: 0 * infinito è NaN
+        amafVisits[chunk][k] = 0;
+        amafWins[chunk][k] = 0;
+        value[chunk][k] = 0;
+        status[chunk][k] = OPEN;
+        if (parent == NONE) {
+            nextSibling[chunk][k] = NONE;
+        } else {
+            // i campi del nodo sono scritti prima che gli altri thread lo possano trovare
+            nextSibling[chunk][k] = firstChild(parent);
+            INT.setRelease(firstChild[parent >>> CHUNK_BITS], parent & CHUNK_MASK, node);
+        }
+        return node;
+    }
+
+    /**
+     * Elimina tutti i nodi, i blocchi restano allocati
+     */
+    synchronized void clear() {
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int capacity() {
+        return maxChunks * CHUNK_SIZE;
+    }
+
+    synchronized boolean isFull() {
+        return size == maxChunks * CHUNK_SIZE;
+    }
+
+    int move(int node) {
+        return move[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int parent(int node) {
+        return parent[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    /**
+     * Tiene solo il sottoalbero di root, spostato all'inizio del pool, con al massimo
+     * maxNodes nodi. Se sono troppi i nodi con meno visite di una soglia perdono tutti i
+     * figli, e tornano aperti e da espandere: le visite di un nodo non sono meno di quelle dei
+     * figli, quindi si scartano sempre sottoalberi interi, i meno visitati. Va chiamato
+     * quando nessun thread sta usando il pool.
+     *
+     * @return la nuova radice, cioè 0
+     */
+    synchronized int compact(int root, int maxNodes) {
+        if (remap.length < size)
+            remap = new int[maxChunks * CHUNK_SIZE];
+
+        // la soglia più bassa che sta in maxNodes, con la ricerca binaria
+        int threshold = 1;
+        if (keep(root, 1) > maxNodes) {
+            int low = 2, high = visits(root) + 1;  // con visits(root) + 1 resta solo la radice
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keep(root, mid) > maxNodes)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            threshold = low;
+        }
+        keep(root, threshold);
+
+        // i figli hanno indici più grandi dei padri, quindi un nodo si sposta sempre in giù
+        // su un posto già libero e i link si possono correggere subito
+        int count = 0;
+        for (int node = root; node < size; node++) {
+            if (remap[node] == NONE)
+                continue;
+            int to = count++;
+            copy(node, to);
+            int chunk = to >>> CHUNK_BITS, k = to & CHUNK_MASK;
+            if (node == root) {
+                parent[chunk][k] = NONE;
+                nextSibling[chunk][k] = NONE;
+            } else {
+                parent[chunk][k] = remap[parent[chunk][k]];
+                nextSibling[chunk][k] = nextSibling[chunk][k] == NONE ? NONE : remap[nextSibling[chunk][k]];
+            }
+            if (visits[chunk][k] < threshold && node != root) {
+                // un nodo dimostrato dai figli torna aperto: la selezione non scende nei
+                // nodi dimostrati, e se diventa la radice senza figli non avrebbe mosse
+                if (firstChild[chunk][k] != NONE)
+                    status[chunk][k] = OPEN;
+                firstChild[chunk][k] = NONE;
+                nextCell[chunk][k] = 0;
+            } else if (firstChild[chunk][k] != NONE) {
+                firstChild[chunk][k] = remap[firstChild[chunk][k]];
+            }
+        }
+        size = count;
+        return 0;
+    }
+
+    /**
+     * Segna in remap i nodi del sottoalbero di root i cui antenati hanno almeno threshold
+     * visite, la radice tiene sempre i figli
+     *
+     * @return quanti nodi si tengono
+     */
+    private int keep(int root, int threshold) {
+        remap[root] = 0;
+        int count = 1;
+        for (int node = root + 1; node < size; node++) {
+            int parent = parent(node);
+            if (parent >= root && remap[parent] != NONE && (parent == root || visits(parent) >= threshold))
+                remap[node] = count++;
+            else
+                remap[node] = NONE;
+        }
+        return count;
+    }
+
+    private void copy(int from, int to) {
+        int fc = from >>> CHUNK_BITS, fk = from & CHUNK_MASK;
+        int tc = to >>> CHUNK_BITS, tk = to & CHUNK_MASK;
+        move[tc][tk] = move[fc][fk];
+        parent[tc][tk] = parent[fc][fk];
+        firstChild[tc][tk] = firstChild[fc][fk];
+        nextSibling[tc][tk] = nextSibling[fc][fk];
+        nextCell[tc][tk] = nextCell[fc][fk];
+        visits[tc][tk] = visits[fc][fk];
+        wins[tc][tk] = wins[fc][fk];
+        mean[tc][tk] = mean[fc][fk];
+        invSqrtVisits[tc][tk] = invSqrtVisits[fc][fk];
+        amafVisits[tc][tk] = amafVisits[fc][fk];
+        amafWins[tc][tk] = amafWins[fc][fk];
+        value[tc][tk] = value[fc][fk];
+        status[tc][tk] = status[fc][fk];
+    }
+
+    int firstChild(int node) {
+        return (int) INT.getAcquire(firstChild[node >>> CHUNK_BITS], node & CHUNK_MASK);
+    }
+
+    int nextSibling(int node) {
+        return nextSibling[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int nextCell(int node) {
+        return (int) INT.getVolatile(nextCell[node >>> CHUNK_BITS], node & CHUNK_MASK);
+    }
+
+    /**
+     * Espande la cella k di getGreatKCell, se nessun altro l'ha già presa: crea il figlio con
+     * la mossa move, o salta la cella se move è NONE. Prenotazione e creazione sono un passo
+     * solo, così quando nextCell arriva al numero di celle libere tutti i figli esistono già.
+     *
+     * @return il nuovo figlio, NONE se la cella è stata saltata, era già presa o il pool è pieno
+     */
+    synchronized int expand(int node, int k, int move) {
+        if (nextCell(node) != k || size == maxChunks * CHUNK_SIZE)
+            return NONE;
+        int child = move == NONE ? NONE : newNode(node, move);
+        INT.setVolatile(nextCell[node >>> CHUNK_BITS], node & CHUNK_MASK, k + 1);
+        return child;
+    }
+
+    int visits(int node) {
+        return visits[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    float wins(int node) {
+        return wins[node >>> CHUNK_BITS][node & CHUNK_MASK] / 2f;
+    }
+
+    /**
+     * Aggiunge il risultato di una simulazione
+     *
+     * @param reward 1 vittoria, 0.5 pareggio, 0 sconfitta per chi ha fatto la mossa del nodo
+     */
+    void update(int node, float reward) {
+        int chunk = node >>> CHUNK_BITS, k = node & CHUNK_MASK;
+        int n = (int) INT.getAndAdd(visits[chunk], k, 1) + 1;
+        int halves = (int) (reward * 2);
+        int w = (int) INT.getAndAdd(wins[chunk], k, halves) + halves;
+        setStatistics(chunk, k, n, w);
+    }
+
+    /**
+     * Virtual loss: conta subito la visita come una sconfitta, così gli altri thread che
+     * scendono nello stesso momento preferiscono altri nodi. Il risultato vero si aggiunge
+     * poi con {@link #updateVirtual(int, float)}, che non conta di nuovo la visita.
+     */
+    void addVirtualLoss(int node) {
+        int chunk = node >>> CHUNK_BITS, k = node & CHUNK_MASK;
+        int n = (int) INT.getAndAdd(visits[chunk], k, 1) + 1;
+        setStatistics(chunk, k, n, (int) INT.getVolatile(wins[chunk], k));
+    }
+
+    void updateVirtual(int node, float reward) {
+        int chunk = node >>> CHUNK_BITS, k = node & CHUNK_MASK;
+        int halves = (int) (reward * 2);
+        int w = (int) INT.getAndAdd(wins[chunk], k, halves) + halves;
+        setStatistics(chunk, k, (int) INT.getVolatile(visits[chunk], k), w);
+    }
+
+    /**
+     * Aggiunge il risultato di una simulazione alle statistiche AMAF
+     *
+     * @param reward come in {@link #update(int, float)}
+     */
+    void updateAmaf(int node, float reward) {
+        int chunk = node >>> CHUNK_BITS, k = node & CHUNK_MASK;
+        INT.getAndAdd(amafVisits[chunk], k, 1);
+        INT.getAndAdd(amafWins[chunk], k, (int) (reward * 2));
+        setValue(chunk, k);
+    }
+
+    private void setStatistics(int chunk, int k, int visits, int halves) {
+        mean[chunk][k] = halves / (2f * visits);
+        invSqrtVisits[chunk][k] = (float) (1 / Math.sqrt(visits));
+        setValue(chunk, k);
+    }
+
+    private void setValue(int chunk, int k) {
+        int visits = this.visits[chunk][k], amaf = amafVisits[chunk][k];
+        float mean = this.mean[chunk][k];
+        if (amaf == 0) {
+            value[chunk][k] = mean;
+            return;
+        }
+        float amafMean = amafWins[chunk][k] / (2f * amaf);
+        float beta = (float) Math.sqrt(RAVE_EQUIVALENCE / (3.0 * visits + RAVE_EQUIVALENCE));
+        value[chunk][k] = mean + beta * (amafMean - mean);
+    }
+
+    /**
+     * @return wins / visits, 0 se il nodo non è mai stato visitato
+     */
+    float mean(int node) {
+        return mean[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int amafVisits(int node) {
+        return amafVisits[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    /**
+     * @return la media di visite e AMAF da usare nella selezione
+     */
+    float value(int node) {
+        return value[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    /**
+     * @return 1 / sqrt(visits), Float.MAX_VALUE se il nodo non è mai stato visitato
+     */
+    float invSqrtVisits(int node) {
+        return invSqrtVisits[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    byte status(int node) {
+        return status[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    void setStatus(int node, byte value) {
+        status[node >>> CHUNK_BITS][node & CHUNK_MASK] = value;
+    }
+
+    /**
+     * @return il figlio con la mossa cell, NONE se non è ancora stato creato
+     */
+    int findChild(int node, int cell) {
+        for (int child = firstChild(node); child != NONE; child = nextSibling(child))
+            if (move(child) == cell)
+                return child;
+        return NONE;
+    }
+}
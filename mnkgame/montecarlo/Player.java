@@ -1,202 +1,183 @@
 package mnkgame.montecarlo;
 
-import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import mnkgame.MNKBudget;
+import mnkgame.MNKCancellable;
 import mnkgame.MNKCell;
 import mnkgame.MNKCellState;
-import mnkgame.MNKGameState;
 import mnkgame.MNKPlayer;
 
-public class Player implements MNKPlayer {
-    private Board B; // TODO make board
+/**
+ * Monte Carlo Tree Search con UCB1, seriale o parallela. L'albero è in un {@link NodePool}
+ * e si riusa fra un turno e l'altro: la radice scende sul figlio della mossa fatta e il
+ * resto del pool si libera. Il numero massimo di nodi si può cambiare con
+ * <code>-Dmnkgame.montecarlo.nodes</code>.
+ * <ul>
+ *     <li>SERIAL: un solo {@link Searcher}</li>
+ *     <li>ROOT: ogni thread ha il suo albero, alla fine si sommano le visite dei figli della radice</li>
+ *     <li>TREE: un solo albero condiviso da tutti i thread, con virtual loss</li>
+ * </ul>
+ * Per confrontarle con MNKPlayerTester ci sono {@link RootParallelPlayer} e {@link TreeParallelPlayer}.
+ * Una mossa dimostrata vincente dal solver si gioca subito, senza aspettare la deadline.
+ * Se il tester annulla la mossa ({@link MNKCancellable}) i searcher si fermano alla
+ * simulazione successiva.
+ */
+public class Player implements MNKPlayer, MNKCancellable {
+    public enum Parallelism { SERIAL, ROOT, TREE }
+
+    private int M, N;
     private long startTime;
     private int TIMEOUT;
-    int possibleMovesLenght;
-    TreeNode root;
-    private final int MOVES_STEP = 5;
 
+    private final Parallelism parallelism;
+    private final int maxThreads;
+    private int threads;  // 1 con il budget a nodi del tester, così la partita si ripete uguale
+    private Searcher[] searchers;
+    private int[] roots;  // radice dell'albero di ogni searcher, nel tree-parallel sono tutte uguali
+    private ForkJoinPool pool;
+    // circa 52MB con il valore di default, divisi fra gli alberi del root-parallel
+    private final int MAX_NODES = Integer.getInteger("mnkgame.montecarlo.nodes", 1 << 20);
 
-    public Player() {}
+    private final boolean DEBUG = false;
 
-    @Override
-    public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
-        myWin = first ? MNKGameState.WINP1 : MNKGameState.WINP2;
-        yourWin = first ? MNKGameState.WINP2 : MNKGameState.WINP1;
-        MNKCellState myState = first ? MNKCellState.P1 : MNKCellState.P2;
-        // MNKCellState yourState = first ? MNKCellState.P2 : MNKCellState.P1;
-        TIMEOUT = timeout_in_secs;
-        B = new Board(M, N, K, myState);
-
-        // ROOT inizializzata con tutte le mosse
-        root = new TreeNode();
-        root.createNextChild(B);
+    public Player() {
+        this(Parallelism.SERIAL, 1);
     }
 
-    private boolean hasTimeRunOut() {
-        return (System.currentTimeMillis() - startTime) / 1000.0 > TIMEOUT * (70.0 / 100.0);
+    /**
+     * @param threads numero di thread, ignorato se la ricerca è seriale
+     */
+    public Player(Parallelism parallelism, int threads) {
+        this.parallelism = parallelism;
+        this.maxThreads = parallelism == Parallelism.SERIAL ? 1 : Math.max(1, threads);
     }
 
-    public MNKGameState myWin;
-    public MNKGameState yourWin;
-    TreeNode select(TreeNode curNode) {
-        while (!curNode.isLeaf && !curNode.isFinished) {
-            curNode = curNode.children.peek();
-            B.markCell(curNode.currMove.i, curNode.currMove.j);
+    @Override
+    public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
+        MNKCellState myState = first ? MNKCellState.P1 : MNKCellState.P2;
+        this.M = M;
+        this.N = N;
+        TIMEOUT = timeout_in_secs;
+        MNKBudget budget = MNKBudget.current();
+        threads = budget.isNodeBudget() ? 1 : maxThreads;
+
+        searchers = new Searcher[threads];
+        roots = new int[threads];
+        NodePool shared = parallelism == Parallelism.TREE ? new NodePool(MAX_NODES) : null;
+        for (int t = 0; t < threads; t++) {
+            NodePool tree = shared != null ? shared : new NodePool(MAX_NODES / threads);
+            searchers[t] = new Searcher(new Board(M, N, K, myState), tree, shared != null, budget.seed() + t);
+            roots[t] = shared != null && t > 0 ? roots[0] : tree.newNode(NodePool.NONE, NodePool.NONE);
         }
-
-        return curNode;
+        if (pool != null)
+            pool.shutdown();  // quello della partita prima
+        pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
     }
 
     /**
-     * @brief suppongo che curNode sia una foglia
-     * @param curNode
-     * @return
+     * Fa la mossa su tutte le board e sposta le radici sul figlio della mossa. Il sottoalbero
+     * che resta si compatta all'inizio del pool e occupa al massimo metà dei nodi, l'altra
+     * metà serve a farlo crescere nel turno.
      */
-    TreeNode expand(TreeNode curNode) {
-        // non abbiamo mosse da farci unmark con la root
-        if (curNode != root && (curNode.tries == 0 || curNode.isFinished)) {
-            // rollout with current node
-            B.unmarkCell();  // non vogliamo mandare in simulate un nodo finisced
-            return curNode;
-        }
-
-        // sono sicuro ora di essere in una foglia che si può espandere
-        TreeNode nextChild = curNode.createNextChild(B);
-        if (nextChild != null) return nextChild;
-
-        // prende il miglior child da ritornare
-        TreeNode bestNode = curNode.children.peek();
-        return bestNode;
-    }
-
-    MNKGameState simulate(TreeNode curNode) {
-        HeuristicCell nextCell = curNode.currMove;
-        int numMoves = 1;
-        MNKGameState lastState = B.markCell(nextCell);
-
-        if (lastState != MNKGameState.OPEN) {  // marca come cella finale non espandibile
-            curNode.isFinished = true;
-        }
-
-        while(lastState == MNKGameState.OPEN){
-            numMoves++;
-
-            // 0.683 1 0.8 2, 0.9 a più. 
-            
-            HeuristicCell best;
-
-            best = B.getGreatKCell(0);  // custom log2 function
-
-
-
-            // QUESTO USA IL MICS.
-            // int bestScore = -1;
-            // for(MNKCell cell : B.getFreeCells()){
-            //     int heuristics = B.getHeuristic(cell.i, cell.j) + B.getSwappedHeuristics(cell.i, cell.j);  // O(K)
-            //     if (heuristics > bestScore) {
-            //         bestScore = heuristics;
-            //         best = cell;
-            //     }
-            // }
-
-            lastState = B.markCell(best);
-        }
+    private void advanceRoot(int cell) {
+        for (int t = 0; t < threads; t++) {
+            searchers[t].getBoard().markCell(cell / N, cell % N);
+            if (parallelism == Parallelism.TREE && t > 0) {
+                roots[t] = roots[0];
+                continue;
+            }
 
-        // si può ottimizzare??? da guardare
-        for(int i = 1; i < numMoves; i++){
-            B.unmarkCell();
+            NodePool tree = searchers[t].getTree();
+            int child = tree.findChild(roots[t], cell);
+            if (child == NodePool.NONE) {
+                tree.clear();
+                roots[t] = tree.newNode(NodePool.NONE, cell);
+            } else {
+                roots[t] = tree.compact(child, tree.capacity() / 2);
+            }
         }
-
-        return lastState;
-
     }
 
-    void backpropagate(MNKGameState state, TreeNode curNode) {
-        int addingValue = 0;
-        if (state == myWin) {
-            addingValue = 2;
-        } else if (state == yourWin) {
-            addingValue = 1;
+    /**
+     * @return una mossa dimostrata vincente se c'è, altrimenti la mossa con più simulazioni
+     * (sommate su tutti gli alberi nel root-parallel) fra quelle non dimostrate perdenti,
+     * -1 se la radice non ha figli
+     */
+    private int mostVisitedMove() {
+        int[] visits = new int[M * N];
+        boolean[] lost = new boolean[M * N];
+        int trees = parallelism == Parallelism.TREE ? 1 : threads;
+        for (int t = 0; t < trees; t++) {
+            NodePool tree = searchers[t].getTree();
+            for (int child = tree.firstChild(roots[t]); child != NodePool.NONE; child = tree.nextSibling(child)) {
+                if (tree.status(child) == NodePool.WIN)
+                    return tree.move(child);
+                lost[tree.move(child)] |= tree.status(child) == NodePool.LOSS;
+                visits[tree.move(child)] += tree.visits(child) + 1;  // + 1: anche le mosse mai visitate sono candidate
+            }
         }
-        // se valutiamo 0 la vittoria nemica, allora non è in grado di bloccare.
-
-
-        while (curNode.parent != null) {
-            curNode.goodTries += addingValue;
-
-            curNode.tries += 2;
-            curNode.parent.children.remove(curNode);
-            curNode.parent.children.add(curNode);  // riaggiorna la posizione del nodo nella priority
 
-            B.unmarkCell();
-
-            curNode = curNode.parent;
+        int best = -1;
+        for (int cell = 0; cell < M * N; cell++) {
+            if (visits[cell] == 0)
+                continue;
+            if (best < 0 || lost[best] && !lost[cell] || lost[best] == lost[cell] && visits[cell] > visits[best])
+                best = cell;
         }
-
-        // aggiorna valori della ROOT
-        curNode.goodTries += addingValue;
-        curNode.tries += 2;
+        return best;
     }
 
-    private TreeNode searchChildren(TreeNode curNode, MNKCell cell) {
-        if (cell == null || curNode == null || curNode.isFinished) return null;  // invalid input
-        if (curNode.isLeaf) {
-            return new TreeNode();
+    @Override
+    public MNKCell selectCell(MNKCell[] FC, MNKCell[] MC) {
+        MNKBudget budget = MNKBudget.current();
+        startTime = budget.currentTimeMillis();
+        if (MC.length > 0) {
+            MNKCell c = MC[MC.length - 1];
+            advanceRoot(c.i * N + c.j);
         }
 
-        for (TreeNode child : curNode.children) {
-            if (child.currMove.i == cell.i && child.currMove.j == cell.j) {
-                return child;
+        long deadline = startTime + (long) (TIMEOUT * 1000 * (70.0 / 100.0));
+        if (pool == null) {
+            searchers[0].search(roots[0], deadline, budget);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(threads - 1);
+            for (int t = 1; t < threads; t++) {
+                final int index = t;
+                tasks.add(pool.submit(() -> searchers[index].search(roots[index], deadline, budget)));
             }
+            searchers[0].search(roots[0], deadline, budget);
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
         }
-        throw new RuntimeErrorException(null, "updateRoot: cell not found");
-    }
 
-    private void updateRoot(TreeNode cell) {
-        if (cell == null) {
-            throw new NullPointerException("the cell i want to update the root with is null");
+        if (DEBUG) {
+            int playouts = 0;
+            for (Searcher searcher : searchers)
+                playouts += searcher.getPlayouts();
+            System.out.println(parallelism + " playouts: " + playouts + ", nodi: " + searchers[0].getTree().size());
         }
 
-        root = cell;
-        root.parent = null;  // scollego la root dal padre
-        B.markCell(cell.currMove);
+        int cell = mostVisitedMove();
+        if (cell < 0)
+            cell = FC[0].i * N + FC[0].j;
+        advanceRoot(cell);
+        return MNKCell.valueOf(cell / N, cell % N, MNKCellState.FREE);
     }
 
     @Override
-    public MNKCell selectCell(MNKCell[] FC, MNKCell[] MC) {
-        startTime = System.currentTimeMillis();
-        MNKCell c = MC.length > 0 ? MC[MC.length - 1] : null;
-        if (c != null)
-            updateRoot(searchChildren(root, c));
-
-        while (!hasTimeRunOut()) {
-            TreeNode leaf = select(root);
-            TreeNode child = expand(leaf);
-            MNKGameState result = simulate(child);  // rollout
-            backpropagate(result, child);
-        }
-
-        // O(n) bestNode with higher number of playouts
-        TreeNode bestNode = null;
-        int nTries = 0;
-        for (TreeNode child : root.children) {
-            if (child.tries > nTries) {
-                nTries = child.tries;
-                bestNode = child;
-            }
-        }
-
-        // if (bestNode.isFinished) {
-        //     System.out.println("bestNode.isFinished");
-        //     System.out.print(root);
-        // }
-
-        updateRoot(bestNode);
-        return bestNode.currMove.toMNKCell();
+    public void cancelMove() {
+        Searcher[] searchers = this.searchers;
+        if (searchers != null)
+            for (Searcher searcher : searchers)
+                searcher.cancel();
     }
 
     @Override
     public String playerName() {
-        return "Montecarlo Player";
+        return parallelism == Parallelism.SERIAL ? "Montecarlo Player" : "Montecarlo Player " + parallelism;
     }
 }
@@ -0,0 +1,261 @@
+package mnkgame.montecarlo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mnkgame.MNKCellState;
+
+/**
+ * Board leggera per i rollout di Montecarlo: le celle sono un array di byte, quelle libere
+ * una lista con rimozione O(1), e per ogni giocatore si tengono le celle che lo fanno
+ * vincere subito. Non c'è euristica e non c'è unmark: ogni rollout copia la posizione
+ * una volta con {@link #copyFrom(Board)} e la gioca fino alla fine.
+ * <p>
+ * Le celle vincenti si trovano con finestre scorrevoli di K celle: una finestra con K-1
+ * pedine di un giocatore e una sola cella libera (la sua posizione è la somma delle
+ * posizioni libere) dà una vittoria. Alla copia si controllano tutte le finestre, dopo una
+ * mossa solo quelle che contengono la cella giocata.
+ * </p>
+ * <p>
+ * Politica: vinci se puoi, altrimenti blocca la vittoria dell'avversario, altrimenti una
+ * cella libera a caso, preferendo quelle vicine a una pedina.
+ * </p>
+ */
+class RolloutBoard {
+    static final int DRAW = -1;
+
+    // tentativi per trovare una cella casuale vicina a una pedina
+    private static final int ADJACENT_TRIES = 3;
+
+    // orizzontale, verticale, diagonale, antidiagonale
+    private static final int[] DI = {0, 1, 1, -1};
+    private static final int[] DJ = {1, 0, 1, 1};
+
+    final int M, N, K;
+    private final byte[] cells;      // 0 libera, 1 primo giocatore, 2 secondo
+    private final int[] free;        // le prime freeCount sono le celle libere
+    private final int[] position;    // posizione di ogni cella libera in free
+    private int freeCount;
+    private int currentPlayer;
+
+    // mosse giocate dall'ultima copia, per l'AMAF
+    private final int[] moves;
+    private int moveCount;
+    private int firstPlayer;
+
+    // celle vincenti di ogni giocatore, possono essere state occupate dopo
+    private final int[][] wins;
+    private final int[] winCount;
+    private final boolean[][] isWin;
+
+    private final Random rand;
+
+    RolloutBoard(int M, int N, int K, long seed) {
+        this.M = M;
+        this.N = N;
+        this.K = K;
+        cells = new byte[M * N];
+        free = new int[M * N];
+        position = new int[M * N];
+        moves = new int[M * N];
+        wins = new int[2][M * N];
+        winCount = new int[2];
+        isWin = new boolean[2][M * N];
+        rand = new Random(seed);
+    }
+
+    /**
+     * Copia la posizione di board, O(M*N)
+     */
+    void copyFrom(Board board) {
+        freeCount = 0;
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                int cell = i * N + j;
+                MNKCellState state = board.getState(i, j);
+                cells[cell] = (byte) (state == MNKCellState.P1 ? 1 : state == MNKCellState.P2 ? 2 : 0);
+                if (state == MNKCellState.FREE) {
+                    position[cell] = freeCount;
+                    free[freeCount++] = cell;
+                }
+            }
+        }
+        currentPlayer = board.currentPlayer();
+        firstPlayer = currentPlayer;
+        moveCount = 0;
+
+        winCount[0] = winCount[1] = 0;
+        Arrays.fill(isWin[0], false);
+        Arrays.fill(isWin[1], false);
+        for (int d = 0; d < 4; d++) {
+            // ogni linea parte da una cella del bordo da cui non si può tornare indietro
+            for (int i = 0; i < M; i++) {
+                for (int j = 0; j < N; j++) {
+                    int pi = i - DI[d], pj = j - DJ[d];
+                    if (pi >= 0 && pi < M && pj >= 0 && pj < N)
+                        continue;
+                    scan(i, j, d, lineLength(i, j, d), 0);
+                    scan(i, j, d, lineLength(i, j, d), 1);
+                }
+            }
+        }
+    }
+
+    private int lineLength(int i, int j, int d) {
+        int length = 0;
+        while (i >= 0 && i < M && j >= 0 && j < N) {
+            length++;
+            i += DI[d];
+            j += DJ[d];
+        }
+        return length;
+    }
+
+    /**
+     * Scorre le finestre di K celle del segmento lungo length che parte da (i, j) in direzione d,
+     * salvando le celle vincenti di player
+     *
+     * @return true se una finestra è tutta di player
+     */
+    private boolean scan(int i, int j, int d, int length, int player) {
+        if (length < K)
+            return false;
+        byte mine = (byte) (player + 1);
+        int step = DI[d] * N + DJ[d];
+        int start = i * N + j;
+        int count = 0, empty = 0, emptySum = 0;
+        for (int k = 0; k < length; k++) {
+            int cell = start + k * step;
+            if (cells[cell] == mine)
+                count++;
+            else if (cells[cell] == 0) {
+                empty++;
+                emptySum += cell;
+            }
+
+            if (k >= K) {
+                int out = start + (k - K) * step;
+                if (cells[out] == mine)
+                    count--;
+                else if (cells[out] == 0) {
+                    empty--;
+                    emptySum -= out;
+                }
+            }
+            if (k >= K - 1) {
+                if (count == K)
+                    return true;
+                if (count == K - 1 && empty == 1 && !isWin[player][emptySum]) {
+                    isWin[player][emptySum] = true;
+                    wins[player][winCount[player]++] = emptySum;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gioca cell per il giocatore di turno
+     *
+     * @return true se la mossa vince
+     */
+    boolean play(int cell) {
+        int player = currentPlayer;
+        cells[cell] = (byte) (player + 1);
+        int last = free[--freeCount];
+        free[position[cell]] = last;
+        position[last] = position[cell];
+        currentPlayer = 1 - player;
+        moves[moveCount++] = cell;
+
+        // solo le finestre che contengono cell, quindi il segmento di 2K-1 celle centrato in cell
+        int i = cell / N, j = cell % N;
+        boolean won = false;
+        for (int d = 0; d < 4; d++) {
+            int back = 0;
+            while (back < K - 1 && isInside(i - (back + 1) * DI[d], j - (back + 1) * DJ[d]))
+                back++;
+            int forward = 0;
+            while (forward < K - 1 && isInside(i + (forward + 1) * DI[d], j + (forward + 1) * DJ[d]))
+                forward++;
+            won |= scan(i - back * DI[d], j - back * DJ[d], d, back + forward + 1, player);
+        }
+        return won;
+    }
+
+    private boolean isInside(int i, int j) {
+        return i >= 0 && i < M && j >= 0 && j < N;
+    }
+
+    /**
+     * @return una cella libera che fa vincere player, -1 se non c'è
+     */
+    private int winningCell(int player) {
+        while (winCount[player] > 0) {
+            int cell = wins[player][winCount[player] - 1];
+            if (cells[cell] == 0)
+                return cell;
+            isWin[player][cell] = false;
+            winCount[player]--;
+        }
+        return -1;
+    }
+
+    private int randomCell() {
+        int cell = free[rand.nextInt(freeCount)];
+        for (int t = 1; t < ADJACENT_TRIES && !hasNeighbour(cell); t++)
+            cell = free[rand.nextInt(freeCount)];
+        return cell;
+    }
+
+    private boolean hasNeighbour(int cell) {
+        int i = cell / N, j = cell % N;
+        for (int di = -1; di <= 1; di++)
+            for (int dj = -1; dj <= 1; dj++)
+                if (isInside(i + di, j + dj) && cells[(i + di) * N + j + dj] != 0)
+                    return true;
+        return false;
+    }
+
+    /**
+     * Gioca la posizione fino alla fine con la politica del rollout
+     *
+     * @return il vincitore (0 primo giocatore, 1 secondo) o DRAW
+     */
+    int playout() {
+        while (freeCount > 0) {
+            int player = currentPlayer;
+            int cell = winningCell(player);
+            if (cell < 0)
+                cell = winningCell(1 - player);
+            if (cell < 0)
+                cell = randomCell();
+            if (play(cell))
+                return player;
+        }
+        return DRAW;
+    }
+
+    /**
+     * @return il giocatore della prima mossa dopo la copia, poi si alternano
+     */
+    int getFirstPlayer() {
+        return firstPlayer;
+    }
+
+    int getMoveCount() {
+        return moveCount;
+    }
+
+    int getMove(int k) {
+        return moves[k];
+    }
+
+    int getFreeCellsCount() {
+        return freeCount;
+    }
+
+    int cellState(int cell) {
+        return cells[cell];
+    }
+}
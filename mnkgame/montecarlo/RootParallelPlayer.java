@@ -0,0 +1,10 @@
+package mnkgame.montecarlo;
+
+/**
+ * {@link Player} root-parallel con un thread per core, per usarlo da MNKPlayerTester
+ */
+public class RootParallelPlayer extends Player {
+    public RootParallelPlayer() {
+        super(Parallelism.ROOT, Runtime.getRuntime().availableProcessors());
+    }
+}
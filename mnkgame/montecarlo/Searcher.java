@@ -0,0 +1,272 @@
+package mnkgame.montecarlo;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKGameState;
+
+/**
+ * Un thread della ricerca di Montecarlo: ha la sua Board e fa le simulazioni su un
+ * {@link NodePool}, suo (seriale e root-parallel) o condiviso con gli altri searcher
+ * (tree-parallel). Con l'albero condiviso ogni nodo del percorso prende una virtual loss
+ * durante la discesa, così i thread non scendono tutti sulla stessa foglia.
+ * Ogni nodo tiene le vittorie dal punto di vista di chi ha fatto la sua mossa,
+ * così la selezione sceglie sempre il massimo. Nella backpropagation si aggiornano anche
+ * le statistiche AMAF dei figli di ogni nodo del percorso (RAVE, vedi {@link NodePool}).
+ * <p>
+ * MCTS-Solver: i risultati dimostrati salgono nell'albero. Se un figlio vince, il nodo
+ * perde; se tutti i figli sono stati creati e perdono, il nodo vince; se perdono o pareggiano,
+ * il nodo pareggia. La selezione non scende nei nodi dimostrati e la ricerca si ferma
+ * quando la radice è dimostrata.
+ * </p>
+ */
+class Searcher {
+    private final Board B;
+    private final RolloutBoard rollout;
+    private final NodePool tree;
+    private final boolean virtualLoss;
+    private final double C = 1.414;  // costante di esplorazione dell'UCB
+
+    private int playouts;
+    private volatile boolean cancelled;
+
+    // chi ha giocato ogni cella dopo il nodo attuale della backpropagation, valido se playedStamp == stamp
+    private final int[] playedStamp;
+    private final byte[] playedBy;
+    private int stamp;
+
+    /**
+     * @param seed seme dei rollout
+     */
+    Searcher(Board board, NodePool tree, boolean virtualLoss, long seed) {
+        this.B = board;
+        this.rollout = new RolloutBoard(board.M, board.N, board.K, seed);
+        this.tree = tree;
+        this.virtualLoss = virtualLoss;
+        this.playedStamp = new int[board.M * board.N];
+        this.playedBy = new byte[board.M * board.N];
+    }
+
+    Board getBoard() {
+        return B;
+    }
+
+    NodePool getTree() {
+        return tree;
+    }
+
+    int getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Simulazioni dalla radice fino alla deadline, finché la radice è dimostrata o finché
+     * la ricerca è annullata, almeno una se la radice non è già dimostrata
+     */
+    void search(int root, long deadline) {
+        search(root, deadline, MNKBudget.current());
+    }
+
+    /**
+     * Come {@link #search(int, long)}, con la deadline misurata su budget: ogni simulazione
+     * espande un nodo e conta come un nodo
+     */
+    void search(int root, long deadline, MNKBudget budget) {
+        playouts = 0;
+        cancelled = false;
+        while (tree.status(root) == NodePool.OPEN) {
+            playout(root);
+            budget.spend(1);
+            if (cancelled || budget.currentTimeMillis() >= deadline)
+                break;
+        }
+    }
+
+    /**
+     * Ferma la ricerca in corso dopo la simulazione attuale, si può chiamare da un altro thread
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    void playout(int root) {
+        if (virtualLoss)
+            tree.addVirtualLoss(root);
+
+        // selezione: si scende finché si trova un nodo con mosse ancora da espandere o una partita finita
+        int node = root;
+        while (tree.status(node) == NodePool.OPEN && tree.nextCell(node) >= B.freeCellsCount) {
+            int child = bestChild(node);
+            if (child == NodePool.NONE)
+                break;  // tutti i figli sono dimostrati, ma un altro thread non ha ancora dimostrato il nodo
+            node = child;
+            markCell(node);
+        }
+
+        if (tree.status(node) == NodePool.OPEN) {
+            int child = expand(node);
+            if (child != NodePool.NONE) {
+                node = child;
+                markCell(node);
+            }
+        }
+
+        float reward;
+        boolean rolledOut = false;
+        if (tree.status(node) == NodePool.WIN)
+            reward = 1;
+        else if (tree.status(node) == NodePool.DRAW)
+            reward = 0.5f;
+        else if (tree.status(node) == NodePool.LOSS)
+            reward = 0;
+        else {
+            reward = simulate();
+            rolledOut = true;
+        }
+        backpropagate(root, node, reward, rolledOut);
+        playouts++;
+    }
+
+    // fa su B la mossa del nodo, se la partita finisce il nodo diventa terminale
+    private void markCell(int node) {
+        if (virtualLoss)
+            tree.addVirtualLoss(node);
+        MNKGameState state = B.markCell(tree.move(node) / B.N, tree.move(node) % B.N);
+        if (state == MNKGameState.DRAW)
+            tree.setStatus(node, NodePool.DRAW);
+        else if (state != MNKGameState.OPEN)
+            tree.setStatus(node, NodePool.WIN);
+    }
+
+    /**
+     * Argmax dell'UCB sui figli non dimostrati: la parte del padre si calcola una volta sola,
+     * media e 1 / sqrt(visite) dei figli sono già nel pool. Un figlio mai visitato ha UCB enorme.
+     *
+     * @return il figlio migliore, NONE se sono tutti dimostrati
+     */
+    private int bestChild(int node) {
+        float exploration = (float) (C * Math.sqrt(Math.log(tree.visits(node))));
+        int best = NodePool.NONE;
+        float bestValue = -1;
+        for (int child = tree.firstChild(node); child != NodePool.NONE; child = tree.nextSibling(child)) {
+            if (tree.status(child) != NodePool.OPEN)
+                continue;
+            float value = tree.value(child) + exploration * tree.invSqrtVisits(child);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Crea il figlio della prossima mossa secondo l'euristica, saltando quelle equivalenti
+     * per simmetria a una già creata. Le board di tutti i thread sono nella stessa posizione
+     * e danno lo stesso ordine, quindi chi perde la corsa su una cella passa alla successiva.
+     *
+     * @return il nuovo figlio, NONE se le mosse sono finite o l'albero è pieno
+     */
+    private int expand(int node) {
+        while (!tree.isFull()) {
+            int k = tree.nextCell(node);
+            if (k >= B.freeCellsCount)
+                return NodePool.NONE;
+            HeuristicCell cell = B.getGreatKCell(k);
+            int move = B.isRedundant(cell.i, cell.j) ? NodePool.NONE : cell.i * B.N + cell.j;
+            int child = tree.expand(node, k, move);
+            if (child != NodePool.NONE)
+                return child;
+        }
+        return NodePool.NONE;
+    }
+
+    /**
+     * Rollout sulla {@link RolloutBoard}: la posizione si copia una volta e B non cambia
+     *
+     * @return il risultato per chi ha fatto l'ultima mossa prima del rollout
+     */
+    private float simulate() {
+        int mover = 1 - B.currentPlayer();
+        rollout.copyFrom(B);
+        int winner = rollout.playout();
+        if (winner == RolloutBoard.DRAW)
+            return 0.5f;
+        return winner == mover ? 1 : 0;
+    }
+
+    /**
+     * Aggiorna i nodi dal basso fino alla radice, il risultato si inverte a ogni livello.
+     * Per l'AMAF si segna chi ha giocato ogni cella, prima nel rollout e poi salendo nell'albero.
+     */
+    private void backpropagate(int root, int node, float reward, boolean rolledOut) {
+        stamp++;
+        if (rolledOut) {
+            int player = rollout.getFirstPlayer();
+            for (int k = 0; k < rollout.getMoveCount(); k++) {
+                played(rollout.getMove(k), player);
+                player = 1 - player;
+            }
+        }
+
+        while (true) {
+            int toMove = B.currentPlayer();
+            updateAmaf(node, toMove, 1 - reward);
+            update(node, reward);
+            if (node == root)
+                break;
+            played(tree.move(node), 1 - toMove);
+            reward = 1 - reward;
+            B.unmarkCell();
+            int parent = tree.parent(node);
+            if (tree.status(node) != NodePool.OPEN && tree.status(parent) == NodePool.OPEN)
+                prove(parent);
+            node = parent;
+        }
+    }
+
+    /**
+     * Prova a dimostrare node dai suoi figli, B è nella posizione di node
+     */
+    private void prove(int node) {
+        byte result = NodePool.WIN;
+        for (int child = tree.firstChild(node); child != NodePool.NONE; child = tree.nextSibling(child)) {
+            byte status = tree.status(child);
+            if (status == NodePool.WIN) {
+                tree.setStatus(node, NodePool.LOSS);
+                return;
+            }
+            if (status == NodePool.OPEN)
+                result = NodePool.OPEN;
+            else if (status == NodePool.DRAW && result == NodePool.WIN)
+                result = NodePool.DRAW;
+        }
+        // con mosse ancora da espandere solo un figlio vincente dimostra qualcosa
+        if (result != NodePool.OPEN && tree.nextCell(node) >= B.freeCellsCount)
+            tree.setStatus(node, result);
+    }
+
+    private void played(int cell, int player) {
+        playedStamp[cell] = stamp;
+        playedBy[cell] = (byte) player;
+    }
+
+    /**
+     * AMAF dei figli di node: quelli la cui mossa è stata giocata più tardi da player,
+     * che è chi muove in node
+     *
+     * @param reward il risultato per player
+     */
+    private void updateAmaf(int node, int player, float reward) {
+        for (int child = tree.firstChild(node); child != NodePool.NONE; child = tree.nextSibling(child)) {
+            int move = tree.move(child);
+            if (playedStamp[move] == stamp && playedBy[move] == player)
+                tree.updateAmaf(child, reward);
+        }
+    }
+
+    private void update(int node, float reward) {
+        if (virtualLoss)
+            tree.updateVirtual(node, reward);  // la visita è già stata contata dalla virtual loss
+        else
+            tree.update(node, reward);
+    }
+}
@@ -0,0 +1,201 @@
+package mnkgame.montecarlo;
+
+import mnkgame.MNKCellState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestNodePool {
+    @Test
+    @DisplayName("Children are linked in front and found by move")
+    public void testLinks() {
+        NodePool tree = new NodePool(10);  // arrotondato a un blocco
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        int a = tree.newNode(root, 3);
+        int b = tree.newNode(root, 7);
+        assert tree.firstChild(root) == b && tree.nextSibling(b) == a && tree.nextSibling(a) == NodePool.NONE;
+        assert tree.findChild(root, 3) == a && tree.findChild(root, 5) == NodePool.NONE;
+        assert tree.parent(a) == root && tree.move(b) == 7;
+
+        tree.update(a, 1);
+        tree.update(a, 0.5f);
+        assert tree.visits(a) == 2 && tree.wins(a) == 1.5f && tree.mean(a) == 0.75f;
+
+        // la virtual loss conta la visita subito e il risultato dopo
+        tree.addVirtualLoss(b);
+        assert tree.visits(b) == 1 && tree.mean(b) == 0;
+        tree.updateVirtual(b, 1);
+        assert tree.visits(b) == 1 && tree.mean(b) == 1;
+
+        // una cella si espande una volta sola, anche se saltata
+        int skipped = tree.expand(root, 0, NodePool.NONE);
+        assert skipped == NodePool.NONE && tree.nextCell(root) == 1;
+        int c = tree.expand(root, 1, 5);
+        int again = tree.expand(root, 1, 6);
+        assert tree.move(c) == 5 && again == NodePool.NONE && tree.nextCell(root) == 2;
+    }
+
+    @Test
+    @DisplayName("The AMAF value weighs less as real visits grow")
+    public void testAmaf() {
+        NodePool tree = new NodePool(10);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        int a = tree.newNode(root, 3);
+        for (int k = 0; k < 10; k++)
+            tree.updateAmaf(a, 1);
+        assert tree.amafVisits(a) == 10 && tree.value(a) == 1;  // senza visite conta solo l'AMAF
+
+        tree.update(a, 0);
+        float first = tree.value(a);
+        assert first > 0 && first < 1;
+        for (int k = 0; k < 1000; k++)
+            tree.update(a, 0);
+        assert tree.value(a) < first && tree.value(a) < 0.5f;
+    }
+
+    @Test
+    @DisplayName("A shared tree stays consistent with concurrent playouts")
+    public void testSharedTree() throws InterruptedException {
+        NodePool tree = new NodePool(1 << 16);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        Searcher[] searchers = new Searcher[4];
+        Thread[] threads = new Thread[searchers.length];
+        long deadline = System.currentTimeMillis() + 300;
+        for (int t = 0; t < searchers.length; t++) {
+            Searcher searcher = new Searcher(new Board(4, 4, 3, MNKCellState.P1), tree, true, t);
+            searchers[t] = searcher;
+            threads[t] = new Thread(() -> searcher.search(root, deadline));
+            threads[t].start();
+        }
+        int playouts = 0;
+        for (int t = 0; t < searchers.length; t++) {
+            threads[t].join();
+            playouts += searchers[t].getPlayouts();
+            assert searchers[t].getBoard().freeCellsCount == 16;  // tutte le mosse sono state annullate
+        }
+
+        // finite le simulazioni non resta nessuna virtual loss
+        assert tree.visits(root) == playouts;
+        checkNode(tree, root);
+    }
+
+    @Test
+    @DisplayName("Compaction keeps the new root's subtree and evicts the least visited nodes")
+    public void testCompact() {
+        NodePool tree = new NodePool(10);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        int a = tree.newNode(root, 0), b = tree.newNode(root, 1);
+        int a1 = tree.newNode(a, 2), a2 = tree.newNode(a, 3);
+        int a11 = tree.newNode(a1, 4), b1 = tree.newNode(b, 5);
+        int[][] visits = {{root, 20}, {a, 10}, {b, 2}, {a1, 5}, {a2, 1}, {a11, 1}, {b1, 1}};
+        for (int[] v : visits)
+            for (int k = 0; k < v[1]; k++)
+                tree.update(v[0], 1);
+        tree.expand(a, 0, NodePool.NONE);
+
+        // radice su a: restano a, a1, a2, a11 all'inizio del pool
+        root = tree.compact(a, 100);
+        assert root == 0 && tree.size() == 4 && tree.parent(root) == NodePool.NONE && tree.nextSibling(root) == NodePool.NONE;
+        assert tree.move(root) == 0 && tree.visits(root) == 10 && tree.nextCell(root) == 1;
+        a1 = tree.findChild(root, 2);
+        a2 = tree.findChild(root, 3);
+        assert tree.parent(a1) == root && tree.parent(a2) == root && tree.visits(a1) == 5;
+        assert tree.move(tree.firstChild(a1)) == 4 && tree.parent(tree.firstChild(a1)) == a1;
+
+        // con 3 nodi a1 perde i figli e torna da espandere
+        root = tree.compact(root, 3);
+        assert tree.size() == 3 && tree.findChild(root, 2) != NodePool.NONE && tree.findChild(root, 3) != NodePool.NONE;
+        assert tree.firstChild(tree.findChild(root, 2)) == NodePool.NONE;
+
+        // i nodi liberati si riusano
+        int reused = tree.newNode(root, 7);
+        assert reused == 3;
+    }
+
+    @Test
+    @DisplayName("Compaction reopens proven nodes that lose their children")
+    public void testCompactProven() {
+        NodePool tree = new NodePool(10);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        int a = tree.newNode(root, 0), b = tree.newNode(root, 1);
+        int a1 = tree.newNode(a, 2), b1 = tree.newNode(b, 3), b2 = tree.newNode(b, 4);
+        int[][] visits = {{root, 20}, {a, 15}, {b, 2}, {a1, 10}, {b1, 1}, {b2, 1}};
+        for (int[] v : visits)
+            for (int k = 0; k < v[1]; k++)
+                tree.update(v[0], 1);
+        tree.setStatus(b, NodePool.LOSS);   // dimostrato dal figlio b1
+        tree.setStatus(b1, NodePool.WIN);   // finale, senza figli
+
+        // b perde i figli e torna aperto, a1 non ne ha e resta com'è
+        root = tree.compact(root, 4);
+        b = tree.findChild(root, 1);
+        assert tree.size() == 4 && tree.firstChild(b) == NodePool.NONE;
+        assert tree.status(b) == NodePool.OPEN;
+
+        // b come nuova radice si può ancora cercare
+        root = tree.compact(b, 50);
+        assert tree.size() == 1 && tree.status(root) == NodePool.OPEN;
+    }
+
+    @Test
+    @DisplayName("A compacted tree stays consistent and keeps growing")
+    public void testCompactSearch() {
+        NodePool tree = new NodePool(1 << 12);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        Board board = new Board(4, 4, 3, MNKCellState.P1);
+        Searcher searcher = new Searcher(board, tree, false, 1);
+        for (int turn = 0; turn < 4 && tree.status(root) == NodePool.OPEN; turn++) {
+            searcher.search(root, System.currentTimeMillis() + 100);
+            int child = tree.firstChild(root);
+            board.markCell(tree.move(child) / 4, tree.move(child) % 4);
+            root = tree.compact(child, tree.capacity() / 4);
+            assert tree.size() <= tree.capacity() / 4;
+            checkNode(tree, root);
+        }
+    }
+
+    @Test
+    @DisplayName("The solver proves 3x3x3 a draw and stops searching")
+    public void testSolver() {
+        NodePool tree = new NodePool(1 << 16);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        Searcher searcher = new Searcher(new Board(3, 3, 3, MNKCellState.P1), tree, false, 1);
+        long start = System.currentTimeMillis();
+        searcher.search(root, start + 20000);
+        assert tree.status(root) == NodePool.DRAW;
+        assert System.currentTimeMillis() - start < 20000;
+        for (int child = tree.firstChild(root); child != NodePool.NONE; child = tree.nextSibling(child))
+            assert tree.status(child) != NodePool.WIN;  // nessuna prima mossa vince
+    }
+
+    @Test
+    @DisplayName("A winning move proves the position at once")
+    public void testProvenWin() {
+        // X X . / O O . / . . . con K = 3, tocca a X
+        Board board = new Board(3, 3, 3, MNKCellState.P1);
+        board.markCell(0, 0);
+        board.markCell(1, 0);
+        board.markCell(0, 1);
+        board.markCell(1, 1);
+        NodePool tree = new NodePool(1 << 12);
+        int root = tree.newNode(NodePool.NONE, NodePool.NONE);
+        Searcher searcher = new Searcher(board, tree, false, 1);
+        searcher.search(root, System.currentTimeMillis() + 20000);
+        assert tree.status(root) == NodePool.LOSS;  // ha perso O, che ha fatto l'ultima mossa
+        assert tree.status(tree.findChild(root, 2)) == NodePool.WIN;
+        assert searcher.getPlayouts() < 1000;
+    }
+
+    private void checkNode(NodePool tree, int node) {
+        boolean[] seen = new boolean[16];
+        int childVisits = 0;
+        for (int child = tree.firstChild(node); child != NodePool.NONE; child = tree.nextSibling(child)) {
+            assert !seen[tree.move(child)] : "figlio duplicato";
+            seen[tree.move(child)] = true;
+            assert tree.parent(child) == node;
+            childVisits += tree.visits(child);
+            checkNode(tree, child);
+        }
+        assert childVisits <= tree.visits(node);
+        assert tree.wins(node) <= tree.visits(node);
+    }
+}
@@ -0,0 +1,65 @@
+package mnkgame.montecarlo;
+
+import java.util.Random;
+
+import mnkgame.MNKBoard;
+import mnkgame.MNKCell;
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestRolloutBoard {
+    @Test
+    @DisplayName("Wins are detected like MNKBoard")
+    public void testWins() {
+        int[][] games = {{3, 3, 3}, {5, 5, 4}, {4, 7, 4}, {6, 6, 5}};
+        Random rand = new Random(3);
+        for (int[] game : games) {
+            int M = game[0], N = game[1], K = game[2];
+            for (int round = 0; round < 200; round++) {
+                MNKBoard reference = new MNKBoard(M, N, K);
+                RolloutBoard board = new RolloutBoard(M, N, K, round);
+                board.copyFrom(new Board(M, N, K, MNKCellState.P1));
+
+                MNKGameState state = MNKGameState.OPEN;
+                while (state == MNKGameState.OPEN) {
+                    MNKCell[] free = reference.getFreeCells();
+                    MNKCell cell = free[rand.nextInt(free.length)];
+                    state = reference.markCell(cell.i, cell.j);
+                    boolean won = board.play(cell.i * N + cell.j);
+                    assert won == (state == MNKGameState.WINP1 || state == MNKGameState.WINP2);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The policy takes a win, then blocks one")
+    public void testPolicy() {
+        // X X . . / O O . . / . . . . / . . . . con K = 3: X vince in (0, 2)
+        Board position = new Board(4, 4, 3, MNKCellState.P1);
+        position.markCell(0, 0);
+        position.markCell(1, 0);
+        position.markCell(0, 1);
+        position.markCell(1, 1);
+        for (int seed = 0; seed < 20; seed++) {
+            RolloutBoard board = new RolloutBoard(4, 4, 3, seed);
+            board.copyFrom(position);
+            assert board.playout() == 0;
+            assert board.cellState(2) == 1 && board.getFreeCellsCount() == 11;
+        }
+
+        // X X . . / . . . . / . . . . / . . . O: tocca a O, che non vince e deve bloccare (0, 2)
+        position = new Board(4, 4, 3, MNKCellState.P1);
+        position.markCell(0, 0);
+        position.markCell(3, 3);
+        position.markCell(0, 1);
+        for (int seed = 0; seed < 20; seed++) {
+            RolloutBoard board = new RolloutBoard(4, 4, 3, seed);
+            board.copyFrom(position);
+            board.playout();
+            assert board.cellState(2) == 2;
+        }
+    }
+}
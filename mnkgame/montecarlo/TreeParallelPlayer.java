@@ -0,0 +1,10 @@
+package mnkgame.montecarlo;
+
+/**
+ * {@link Player} tree-parallel con un thread per core, per usarlo da MNKPlayerTester
+ */
+public class TreeParallelPlayer extends Player {
+    public TreeParallelPlayer() {
+        super(Parallelism.TREE, Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,491 @@
+package mnkgame.parallel;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKGameState;
+
+/**
+ * Principal variation search (negamax) parallelizzata con Young Brothers Wait.
+ * <p>
+ * In ogni nodo il primo figlio si valuta da solo, così si ha un alpha buono; poi,
+ * se la profondità rimanente è almeno {@link #setMinSplitDepth(int) minSplitDepth},
+ * gli altri figli diventano task di un {@link ForkJoinPool}, che i thread liberi si
+ * rubano a vicenda. Ogni nodo diviso ha uno {@link SplitPoint} con alpha e la mossa
+ * migliore condivisi fra i fratelli, e quando un fratello trova un cutoff tutti gli
+ * altri task sotto quel nodo si fermano.
+ * </p>
+ * <p>
+ * Ogni thread ha una sua copia della board: un task porta con sé le mosse dalla radice
+ * al suo nodo e il thread che lo esegue annulla e rigioca solo quelle diverse dalla
+ * posizione in cui si trova la sua copia.
+ * </p>
+ */
+public class ParallelSearch {
+    /**
+     * Valore di una vittoria, le vittorie più vicine valgono di più
+     */
+    public static final int WIN = 1000000000;
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int NO_MOVE = -1;
+
+    private final int threads;
+    private final ForkJoinPool pool;  // null con un solo thread
+    private int minSplitDepth = 3;
+
+    // copie della board dei thread del pool, create alla prima ricerca
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+    private final ConcurrentLinkedQueue<Worker> allWorkers = new ConcurrentLinkedQueue<Worker>();
+
+    // stato della ricerca in corso
+    private SearchBoard root;
+    private int rootLength;
+    private int generation;
+    private long deadline;
+    private MNKBudget budget;  // orologio del turno, a cui si contano i nodi
+    private volatile boolean timeout;
+    private int rootPreferredMove;
+    private int rootBestMove;
+
+    // risultati
+    private int bestMove;
+    private int bestValue;
+    private int completedDepth;
+    private long[] timeToDepth = new long[0];
+
+    /**
+     * @param threads numero di thread, con 1 la ricerca è sequenziale sul thread chiamante
+     */
+    public ParallelSearch(int threads) {
+        this.threads = Math.max(1, threads);
+        this.pool = this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Chiude il pool dei thread, dopo la ricerca non si può più usare
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * I nodi con profondità rimanente minore non vengono divisi fra i thread
+     */
+    public void setMinSplitDepth(int minSplitDepth) {
+        this.minSplitDepth = Math.max(1, minSplitDepth);
+    }
+
+    /**
+     * Ricerca a profondità fissa, senza limite di tempo
+     *
+     * @return la mossa migliore, -1 se la partita è finita
+     */
+    public int search(SearchBoard board, int depth) {
+        return searchIterative(board, depth, Long.MAX_VALUE);
+    }
+
+    /**
+     * Iterative deepening fino a maxDepth o fino al deadline. A ogni iterazione la
+     * mossa migliore della precedente viene provata per prima.
+     *
+     * @param deadline istante in millisecondi (come {@link MNKBudget#currentTimeMillis()}
+     *                 del budget del turno) in cui fermarsi
+     * @return la mossa migliore dell'ultima profondità completata, -1 se la partita è finita
+     */
+    public int searchIterative(SearchBoard board, int maxDepth, long deadline) {
+        return searchIterative(board, maxDepth, deadline, MNKBudget.current());
+    }
+
+    /**
+     * Come {@link #searchIterative(SearchBoard, int, long)}, con il deadline misurato su budget
+     */
+    public int searchIterative(SearchBoard board, int maxDepth, long deadline, MNKBudget budget) {
+        startSearch(board, deadline, budget);
+        timeToDepth = new long[maxDepth + 1];
+        long start = System.nanoTime();
+        if (board.gameState() != MNKGameState.OPEN)
+            return NO_MOVE;
+
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            rootPreferredMove = bestMove;
+            rootBestMove = NO_MOVE;
+            int value = runRoot(depth);
+            if (timeout) {
+                // una iterazione interrotta vale solo se non ce n'era una completa
+                if (bestMove == NO_MOVE)
+                    bestMove = rootBestMove;
+                break;
+            }
+
+            bestMove = rootBestMove;
+            bestValue = value;
+            completedDepth = depth;
+            timeToDepth[depth] = System.nanoTime() - start;
+            if (Math.abs(value) >= WIN - board.movesCount() - maxDepth)
+                break;  // risultato già dimostrato
+        }
+
+        if (bestMove == NO_MOVE) {
+            // non è finito neanche il primo figlio, si gioca la prima mossa generata
+            int[] moves = new int[board.maxMoves()];
+            if (board.generateMoves(moves, 0) > 0)
+                bestMove = moves[0];
+        }
+        return bestMove;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return il valore della mossa migliore per il giocatore che muove alla radice
+     */
+    public int getBestValue() {
+        return bestValue;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return i nanosecondi impiegati per completare ogni profondità dall'inizio della ricerca
+     */
+    public long[] getTimeToDepth() {
+        return Arrays.copyOf(timeToDepth, completedDepth + 1);
+    }
+
+    /**
+     * @return i nodi visitati dall'ultima ricerca, sommati su tutti i thread
+     */
+    public long getNodes() {
+        long nodes = 0;
+        for (Worker w : allWorkers)
+            nodes += w.nodes;
+        return nodes;
+    }
+
+    private void startSearch(SearchBoard board, long deadline, MNKBudget budget) {
+        this.root = board;
+        this.rootLength = board.movesCount();
+        this.deadline = deadline;
+        this.budget = budget;
+        this.timeout = false;
+        this.generation++;
+        this.bestMove = NO_MOVE;
+        this.bestValue = 0;
+        this.completedDepth = 0;
+        for (Worker w : allWorkers)
+            w.nodes = 0;
+    }
+
+    private int runRoot(int depth) {
+        if (pool == null) {
+            Worker w = allWorkers.isEmpty() ? null : allWorkers.peek();
+            if (w == null || w.board != root) {
+                allWorkers.clear();
+                w = new Worker(root);
+                allWorkers.add(w);
+            }
+            w.generation = generation;
+            return pvs(w, depth, -INF, INF, null, 0);
+        }
+
+        final int[] value = new int[1];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                Worker w = worker();
+                w.syncTo(new int[0], 0);
+                value[0] = pvs(w, depth, -INF, INF, null, 0);
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * @return il worker del thread attuale, la sua board è nella posizione della radice o in un suo figlio
+     */
+    private Worker worker() {
+        Worker w = workers.get();
+        if (w == null) {
+            w = new Worker(root.copy());
+            w.generation = generation;
+            workers.set(w);
+            allWorkers.add(w);
+        } else if (w.generation != generation) {
+            w.syncToRoot();
+            w.generation = generation;
+        }
+        return w;
+    }
+
+    /**
+     * @return true se il nodo non serve più: tempo finito o cutoff in uno split point sopra
+     */
+    private boolean isAborted(SplitPoint sp) {
+        if (timeout)
+            return true;
+        for (; sp != null; sp = sp.parent) {
+            if (sp.cutoff)
+                return true;
+        }
+        return false;
+    }
+
+    private int pvs(Worker w, int depth, int alpha, int beta, SplitPoint sp, int ply) {
+        if ((++w.nodes & 1023) == 0) {
+            budget.spend(1024);
+            if (budget.currentTimeMillis() > deadline)
+                timeout = true;
+        }
+        if (isAborted(sp))
+            return 0;
+
+        MNKGameState state = w.board.gameState();
+        if (state == MNKGameState.DRAW)
+            return 0;
+        else if (state != MNKGameState.OPEN)
+            return -(WIN - w.board.movesCount());  // ha vinto chi ha appena mosso
+        if (depth == 0)
+            return w.board.evaluate();
+
+        int base = w.reserve();
+        int n = w.board.generateMoves(w.moves, base);
+        w.top = base + n;
+        if (ply == 0)
+            moveToFront(w.moves, base, n, rootPreferredMove);
+
+        // il primo figlio si valuta sempre da solo
+        int bestMove = w.moves[base];
+        w.play(bestMove);
+        int best = -pvs(w, depth - 1, -beta, -alpha, sp, ply + 1);
+        w.undo();
+        if (best > alpha)
+            alpha = best;
+        if (ply == 0 && !isAborted(sp))
+            rootBestMove = bestMove;
+
+        if (alpha < beta && n > 1 && !isAborted(sp)) {
+            if (pool != null && depth >= minSplitDepth) {
+                SplitPoint split = new SplitPoint(sp, alpha, beta, best, bestMove);
+                split(w, split, base + 1, n - 1, depth, ply);
+                best = split.best;
+                bestMove = split.bestMove;
+            } else {
+                for (int k = 1; k < n && alpha < beta; k++) {
+                    int move = w.moves[base + k];
+                    w.play(move);
+                    int v = -pvs(w, depth - 1, -alpha - 1, -alpha, sp, ply + 1);
+                    if (v > alpha && v < beta)
+                        v = -pvs(w, depth - 1, -beta, -v, sp, ply + 1);
+                    w.undo();
+                    if (isAborted(sp))
+                        break;
+                    if (v > best) {
+                        best = v;
+                        bestMove = move;
+                    }
+                    if (v > alpha)
+                        alpha = v;
+                }
+            }
+            if (ply == 0 && !isAborted(sp))
+                rootBestMove = bestMove;
+        }
+
+        w.top = base;
+        return best;
+    }
+
+    /**
+     * Valuta in parallelo i fratelli dopo il primo: tutti diventano task tranne l'ultimo,
+     * che il thread attuale valuta subito, poi aspetta gli altri aiutando il pool.
+     */
+    private void split(Worker w, SplitPoint split, int from, int count, int depth, int ply) {
+        int[] path = w.path();
+        SiblingTask[] tasks = new SiblingTask[count - 1];
+        for (int k = 0; k < count - 1; k++) {
+            tasks[k] = new SiblingTask(split, path, w.moves[from + k], depth, ply);
+            tasks[k].fork();
+        }
+        new SiblingTask(split, path, w.moves[from + count - 1], depth, ply).searchSibling(w);
+        for (int k = count - 2; k >= 0; k--)
+            tasks[k].join();
+
+        // mentre aspettava il thread può aver eseguito task di altri nodi
+        w.syncTo(path, path.length);
+    }
+
+    private static void moveToFront(int[] moves, int from, int count, int move) {
+        for (int k = from; k < from + count; k++) {
+            if (moves[k] == move) {
+                moves[k] = moves[from];
+                moves[from] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Nodo diviso fra più thread
+     */
+    private static class SplitPoint {
+        final SplitPoint parent;
+        final int beta;
+        int alpha;
+        int best;
+        int bestMove;
+        volatile boolean cutoff;
+
+        SplitPoint(SplitPoint parent, int alpha, int beta, int best, int bestMove) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.best = best;
+            this.bestMove = bestMove;
+        }
+
+        synchronized int getAlpha() {
+            return alpha;
+        }
+
+        synchronized void update(int value, int move) {
+            if (value > best) {
+                best = value;
+                bestMove = move;
+            }
+            if (value > alpha)
+                alpha = value;
+            if (alpha >= beta)
+                cutoff = true;
+        }
+    }
+
+    /**
+     * Un fratello di uno split point
+     */
+    private class SiblingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SplitPoint split;
+        private final int[] path;
+        private final int move;
+        private final int depth;
+        private final int ply;
+
+        SiblingTask(SplitPoint split, int[] path, int move, int depth, int ply) {
+            this.split = split;
+            this.path = path;
+            this.move = move;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected void compute() {
+            if (isAborted(split))
+                return;
+            Worker w = worker();
+            w.syncTo(path, path.length);
+            searchSibling(w);
+        }
+
+        void searchSibling(Worker w) {
+            int alpha = split.getAlpha();
+            if (isAborted(split))
+                return;
+
+            w.play(move);
+            int v = -pvs(w, depth - 1, -alpha - 1, -alpha, split, ply + 1);
+            if (v > alpha && v < split.beta && !isAborted(split))
+                v = -pvs(w, depth - 1, -split.beta, -v, split, ply + 1);
+            w.undo();
+
+            if (!isAborted(split))
+                split.update(v, move);
+        }
+    }
+
+    /**
+     * Board e pila delle mosse di un thread
+     */
+    private class Worker {
+        final SearchBoard board;
+        int[] moves = new int[256];
+        int top = 0;
+        long nodes = 0;
+        int generation;
+
+        Worker(SearchBoard board) {
+            this.board = board;
+        }
+
+        /**
+         * @return l'inizio dello spazio per le mosse di un nodo, la pila cresce se serve.
+         * I task eseguiti mentre si aspetta un join usano la pila sopra top, quindi
+         * le mosse dei nodi sotto non vengono toccate.
+         */
+        int reserve() {
+            int needed = top + board.maxMoves();
+            if (needed > moves.length)
+                moves = Arrays.copyOf(moves, Math.max(needed, moves.length * 2));
+            return top;
+        }
+
+        void play(int move) {
+            board.playMove(move);
+        }
+
+        void undo() {
+            board.undoMove();
+        }
+
+        /**
+         * @return le mosse dalla radice alla posizione attuale
+         */
+        int[] path() {
+            int[] path = new int[board.movesCount() - rootLength];
+            for (int k = 0; k < path.length; k++)
+                path[k] = board.getMove(rootLength + k);
+            return path;
+        }
+
+        /**
+         * Porta la board nella posizione radice + path, annullando e rigiocando solo le mosse diverse
+         */
+        void syncTo(int[] path, int length) {
+            int current = board.movesCount() - rootLength;
+            int common = 0;
+            while (common < current && common < length && board.getMove(rootLength + common) == path[common])
+                common++;
+            for (; current > common; current--)
+                board.undoMove();
+            for (int k = common; k < length; k++)
+                board.playMove(path[k]);
+        }
+
+        /**
+         * Porta la board nella posizione della nuova radice, che può avere più o meno mosse
+         */
+        void syncToRoot() {
+            int current = board.movesCount();
+            int common = 0;
+            while (common < current && common < rootLength && board.getMove(common) == root.getMove(common))
+                common++;
+            for (; current > common; current--)
+                board.undoMove();
+            for (int k = common; k < rootLength; k++)
+                board.playMove(root.getMove(k));
+        }
+    }
+}
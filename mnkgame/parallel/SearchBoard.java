@@ -0,0 +1,53 @@
+package mnkgame.parallel;
+
+import mnkgame.MNKGameState;
+
+/**
+ * Board vista dalla ricerca parallela {@link ParallelSearch}.
+ * <p>
+ * Le mosse sono indici <code>i * N + j</code>. La board deve ricordare tutte le mosse
+ * giocate dall'inizio della partita: la ricerca le usa per riportare le copie dei
+ * thread nella posizione di un nodo, annullando e rigiocando solo le mosse diverse.
+ * </p>
+ */
+public interface SearchBoard {
+    /**
+     * Scrive in moves, a partire da offset, le mosse da provare nella posizione attuale,
+     * dalla più promettente
+     *
+     * @return il numero di mosse scritte, al massimo {@link #maxMoves()}
+     */
+    public int generateMoves(int[] moves, int offset);
+
+    /**
+     * @return il massimo numero di mosse che generateMoves può scrivere
+     */
+    public int maxMoves();
+
+    public MNKGameState playMove(int move);
+
+    public void undoMove();
+
+    public MNKGameState gameState();
+
+    /**
+     * @return il valore euristico della posizione per il giocatore che deve muovere,
+     * in valore assoluto minore di {@link ParallelSearch#WIN} - M * N
+     */
+    public int evaluate();
+
+    /**
+     * @return il numero di mosse giocate dall'inizio della partita
+     */
+    public int movesCount();
+
+    /**
+     * @return la k-esima mossa giocata dall'inizio della partita
+     */
+    public int getMove(int k);
+
+    /**
+     * @return una nuova board indipendente nella stessa posizione
+     */
+    public SearchBoard copy();
+}
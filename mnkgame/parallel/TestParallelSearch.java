@@ -0,0 +1,52 @@
+package mnkgame.parallel;
+
+import mnkgame.cboard.CSearchBoard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestParallelSearch {
+    @Test
+    @DisplayName("Tic-tac-toe is a draw with any number of threads")
+    public void testTicTacToe() {
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            ParallelSearch search = new ParallelSearch(threads);
+            search.setMinSplitDepth(1);
+            search.search(new CSearchBoard(3, 3, 3), 9);
+            assert search.getBestValue() == 0;
+            assert search.getCompletedDepth() == 9;
+        }
+    }
+
+    @Test
+    @DisplayName("Parallel search finds the same value of the sequential one")
+    public void testSameValue() {
+        int[][] games = {{4, 4, 3}, {5, 5, 4}};
+        for (int[] game : games) {
+            CSearchBoard board = new CSearchBoard(game[0], game[1], game[2]);
+            board.playMove(0);
+            board.playMove(game[1] + 1);
+
+            ParallelSearch sequential = new ParallelSearch(1);
+            sequential.search(board, 5);
+            ParallelSearch parallel = new ParallelSearch(4);
+            parallel.setMinSplitDepth(1);
+            parallel.search(board, 5);
+
+            assert sequential.getBestValue() == parallel.getBestValue();
+            assert board.movesCount() == 2;  // la board della radice non viene toccata
+        }
+    }
+
+    @Test
+    @DisplayName("A one-move win is found and valued as a win")
+    public void testImmediateWin() {
+        CSearchBoard board = new CSearchBoard(3, 3, 3);
+        int[] moves = {0, 3, 1, 4};  // il primo giocatore vince in 2
+        for (int move : moves)
+            board.playMove(move);
+
+        ParallelSearch search = new ParallelSearch(2);
+        assert search.search(board, 3) == 2;
+        assert search.getBestValue() == ParallelSearch.WIN - 5;
+    }
+}
@@ -0,0 +1,330 @@
+package mnkgame.solver;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.Symmetry;
+import mnkgame.bitboard.BitBoard;
+
+/**
+ * Solver esatto per l'(M,N,K)-game con la depth-first proof-number search (df-pn)
+ * sulla {@link BitBoard}.
+ * <p>
+ * La df-pn dimostra solo obiettivi binari, quindi il valore della posizione si trova con
+ * due ricerche: prima se il giocatore di turno vince, poi (se non vince) se almeno pareggia.
+ * Ogni nodo ha proof e disproof number dal punto di vista di chi muove (forma negamax):
+ * proof = minimo dei disproof dei figli, disproof = somma dei proof dei figli.
+ * Le due ricerche usano la stessa {@link ProofTable} con chiavi diverse, e la tabella
+ * resta valida fra una chiamata e l'altra, anche fra i turni della stessa partita.
+ * </p>
+ * <p>
+ * Proof e disproof number non cambiano ruotando o specchiando la board, quindi la tabella
+ * usa le chiavi canoniche di {@link Symmetry} e le posizioni simmetriche condividono
+ * l'entry. Finché una posizione è simmetrica si genera un solo figlio per ogni classe
+ * di mosse equivalenti.
+ * </p>
+ * <p>
+ * Se il tempo finisce prima della dimostrazione il risultato è UNKNOWN, ma restano
+ * proof e disproof number della radice e la mossa più promettente.
+ * </p>
+ */
+public class DfpnSolver {
+    public enum Result { WIN, DRAW, LOSS, UNKNOWN }
+
+    public static final int NO_MOVE = -1;
+    static final int INF = 1 << 30;
+
+    // soglia dei figli moltiplicata per 1 + EPSILON, riduce i ritorni continui al padre
+    private static final double EPSILON = 0.25;
+    private static final int TIME_CHECK_MASK = 1023;
+
+    // chiavi delle due ricerche, così stanno nella stessa tabella
+    private static final long[] SALT = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL};
+
+    private final ProofTable table;
+    private Symmetry symmetry;
+    private BitBoard board;
+    private int M, N, K;
+    private int rootMoves;
+    private boolean drawIsWin;
+    private long salt;
+
+    // figli di ogni profondità con i loro valori, così non dipendono dalla tabella durante la ricerca
+    private int[][] childMove;
+    private int[][] childProof;
+    private int[][] childDisproof;
+    private int rootChildren;
+
+    // valori dell'ultimo nodo visitato da mid
+    private int lastProof;
+    private int lastDisproof;
+
+    private long deadline;
+    private MNKBudget budget;  // orologio del turno, a cui si contano i nodi
+    private boolean timedOut;
+    private long nodes;
+    private long checkedNodes;  // nodi già contati nel budget
+
+    private int bestMove;
+    private int rootProof;
+    private int rootDisproof;
+
+    /**
+     * @param log2TableSize la tabella avrà 2^log2TableSize entry da 20 byte, è tutta la memoria del solver
+     *                      oltre ai buffer dei figli
+     */
+    public DfpnSolver(int log2TableSize) {
+        table = new ProofTable(log2TableSize);
+        childMove = new int[0][];
+        childProof = new int[0][];
+        childDisproof = new int[0][];
+    }
+
+    /**
+     * Risolve la posizione per il giocatore di turno. La board viene usata per la ricerca
+     * ma alla fine è di nuovo nella posizione di partenza. Se cambiano le dimensioni della
+     * board la tabella si svuota, le chiavi di board diverse non sono confrontabili.
+     *
+     * @param deadline istante (come {@link MNKBudget#currentTimeMillis()} del budget del turno)
+     *                 in cui fermarsi
+     * @return il valore per il giocatore di turno, UNKNOWN se non è stato dimostrato in tempo
+     */
+    public Result solve(BitBoard board, long deadline) {
+        return solve(board, deadline, MNKBudget.current());
+    }
+
+    /**
+     * Come {@link #solve(BitBoard, long)}, con il deadline misurato su budget
+     */
+    public Result solve(BitBoard board, long deadline, MNKBudget budget) {
+        if (board.gameState() != MNKGameState.OPEN)
+            throw new IllegalStateException("Game ended!");
+
+        if (board.M != M || board.N != N || board.K != K) {
+            table.clear();
+            M = board.M;
+            N = board.N;
+            K = board.K;
+            symmetry = new Symmetry(M, N);
+        }
+        // le chiavi delle simmetrie si ricostruiscono dalla posizione
+        symmetry.clear();
+        for (int cell = 0; cell < M * N; cell++) {
+            MNKCellState state = board.cellState(cell / N, cell % N);
+            if (state != MNKCellState.FREE)
+                symmetry.mark(cell, state == MNKCellState.P1 ? 0 : 1);
+        }
+        this.board = board;
+        this.deadline = deadline;
+        this.budget = budget;
+        this.timedOut = false;
+        this.checkedNodes = nodes;
+        this.rootMoves = board.getMarkedCellsCount();
+        if (childMove.length < board.getFreeCellsCount() + 1) {
+            childMove = new int[board.getFreeCellsCount() + 1][];
+            childProof = new int[childMove.length][];
+            childDisproof = new int[childMove.length][];
+        }
+
+        // il primo giocatore e il secondo hanno obiettivi diversi, anche questo va nella chiave
+        int rootPlayer = board.currentPlayer();
+
+        if (prove(false, rootPlayer))
+            return Result.WIN;
+        if (timedOut || rootDisproof != 0)
+            return Result.UNKNOWN;
+
+        int notWinMove = bestMove;
+        if (prove(true, rootPlayer))
+            return Result.DRAW;
+        if (timedOut || rootDisproof != 0)
+            return Result.UNKNOWN;
+
+        // persa comunque: si gioca la mossa che la prima ricerca aveva trovato meglio
+        bestMove = notWinMove;
+        return Result.LOSS;
+    }
+
+    /**
+     * @return la mossa <code>i * N + j</code>: quella dimostrata se il risultato è WIN o DRAW,
+     * altrimenti la più promettente dell'ultima ricerca
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return proof number della radice dell'ultima ricerca, 0 se dimostrata
+     */
+    public int getRootProof() {
+        return rootProof;
+    }
+
+    /**
+     * @return disproof number della radice dell'ultima ricerca, 0 se confutata
+     */
+    public int getRootDisproof() {
+        return rootDisproof;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    // df-pn della radice: true se l'obiettivo del giocatore di turno è dimostrato
+    private boolean prove(boolean drawIsWin, int rootPlayer) {
+        this.drawIsWin = drawIsWin;
+        this.salt = SALT[drawIsWin ? 1 : 0] * (rootPlayer + 1);
+        mid(0, INF, INF);
+        rootProof = lastProof;
+        rootDisproof = lastDisproof;
+        bestMove = selectRootMove();
+        return rootProof == 0;
+    }
+
+    /**
+     * Multiple iterative deepening: espande il nodo finché i suoi numeri restano sotto le soglie
+     */
+    private void mid(int depth, int thProof, int thDisproof) {
+        nodes++;
+        if (board.gameState() != MNKGameState.OPEN) {
+            terminal();
+            return;
+        }
+
+        long key = symmetry.key() ^ salt;
+        long startNodes = nodes;
+        int count = expand(depth);
+        if (depth == 0)
+            rootChildren = count;
+        int[] proofs = childProof[depth];
+        int[] disproofs = childDisproof[depth];
+
+        while (true) {
+            int proof = INF, second = INF, best = 0;
+            long disproof = 0;
+            for (int k = 0; k < count; k++) {
+                int d = disproofs[k];
+                if (d < proof) {
+                    second = proof;
+                    proof = d;
+                    best = k;
+                } else if (d < second) {
+                    second = d;
+                }
+                disproof += proofs[k];
+            }
+            int sum = (int) Math.min(disproof, INF);
+            if (proof == 0)
+                sum = INF;
+
+            if (proof >= thProof || sum >= thDisproof || isTimeUp()) {
+                lastProof = proof;
+                lastDisproof = sum;
+                if (!timedOut)
+                    table.store(key, proof, sum, nodes - startNodes + 1);
+                return;
+            }
+
+            // soglie del figlio: il suo proof è un pezzo del nostro disproof e viceversa
+            int childThProof = (int) Math.min(INF, (long) thDisproof - sum + proofs[best]);
+            int childThDisproof = (int) Math.min(thProof, Math.min(INF, (long) (second * (1 + EPSILON)) + 1));
+
+            int move = childMove[depth][best], player = board.currentPlayer();
+            board.markCell(move / board.N, move % board.N);
+            symmetry.mark(move, player);
+            mid(depth + 1, childThProof, childThDisproof);
+            symmetry.unmark(move, player);
+            board.unmarkCell();
+            proofs[best] = lastProof;
+            disproofs[best] = lastDisproof;
+        }
+    }
+
+    // valori di una posizione finita, per il giocatore di turno
+    private void terminal() {
+        boolean success;
+        if (board.gameState() == MNKGameState.DRAW) {
+            boolean isRoot = ((board.getMarkedCellsCount() - rootMoves) & 1) == 0;
+            // il pareggio va bene alla radice solo nella seconda ricerca, all'avversario solo nella prima
+            success = isRoot == drawIsWin;
+        } else {
+            success = false;  // ha vinto chi ha appena mosso
+        }
+        lastProof = success ? 0 : INF;
+        lastDisproof = success ? INF : 0;
+    }
+
+    /**
+     * Genera i figli con i valori della tabella, (1, 1) se non ci sono.
+     * I figli che chiudono la partita si valutano subito, quelli equivalenti per
+     * simmetria a un figlio già generato si saltano.
+     */
+    private int expand(int depth) {
+        // i buffer si allocano solo alle profondità raggiunte
+        int free = board.getFreeCellsCount();
+        if (childMove[depth] == null || childMove[depth].length < free) {
+            childMove[depth] = new int[free];
+            childProof[depth] = new int[free];
+            childDisproof[depth] = new int[free];
+        }
+        int[] moves = childMove[depth];
+        int[] proofs = childProof[depth];
+        int[] disproofs = childDisproof[depth];
+        int count = 0;
+
+        int N = board.N, player = board.currentPlayer();
+        boolean symmetric = symmetry.isSymmetric();
+        for (int cell = 0; cell < board.M * N; cell++) {
+            if (board.cellState(cell / N, cell % N) != MNKCellState.FREE)
+                continue;
+            if (symmetric && symmetry.isRedundant(cell))
+                continue;
+            MNKGameState state = board.markCell(cell / N, cell % N);
+            symmetry.mark(cell, player);
+            moves[count] = cell;
+            if (state != MNKGameState.OPEN) {
+                terminal();
+                proofs[count] = lastProof;
+                disproofs[count] = lastDisproof;
+            } else if (table.lookup(symmetry.key() ^ salt)) {
+                proofs[count] = table.lastProof;
+                disproofs[count] = table.lastDisproof;
+            } else {
+                proofs[count] = 1;
+                disproofs[count] = 1;
+            }
+            symmetry.unmark(cell, player);
+            board.unmarkCell();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Mossa della radice: quella con il disproof più basso, cioè la più vicina a
+     * confutare l'avversario, a parità quella con il proof più alto
+     */
+    private int selectRootMove() {
+        int count = rootChildren;
+        int best = NO_MOVE, bestDisproof = Integer.MAX_VALUE, bestProof = -1;
+        for (int k = 0; k < count; k++) {
+            int d = childDisproof[0][k], p = childProof[0][k];
+            if (d < bestDisproof || (d == bestDisproof && p > bestProof)) {
+                best = childMove[0][k];
+                bestDisproof = d;
+                bestProof = p;
+            }
+        }
+        return best;
+    }
+
+    private boolean isTimeUp() {
+        if (!timedOut && nodes - checkedNodes > TIME_CHECK_MASK) {
+            budget.spend(nodes - checkedNodes);
+            checkedNodes = nodes;
+            timedOut = budget.currentTimeMillis() > deadline;
+        }
+        return timedOut;
+    }
+}
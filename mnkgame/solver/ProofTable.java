@@ -0,0 +1,68 @@
+package mnkgame.solver;
+
+import java.util.Arrays;
+
+/**
+ * Tabella delle trasposizioni della proof-number search, a dimensione fissa così la
+ * memoria usata dal solver non cresce con la ricerca.
+ * <p>
+ * Per ogni posizione si salvano proof number e disproof number (dal punto di vista del
+ * giocatore di turno) e il lavoro fatto per calcolarli, cioè i nodi del sottoalbero.
+ * Le entry sono a coppie: una posizione nuova prende il posto di quella con meno lavoro
+ * fra le due, così le dimostrazioni costose restano in tabella.
+ * </p>
+ */
+class ProofTable {
+    private final long[] keys;
+    private final int[] proof;
+    private final int[] disproof;
+    private final int[] work;
+    private final int mask;
+
+    // valori letti dall'ultimo lookup riuscito
+    int lastProof;
+    int lastDisproof;
+
+    /**
+     * @param log2Size la tabella avrà 2^log2Size entry, 20 byte ciascuna
+     */
+    ProofTable(int log2Size) {
+        int size = 1 << Math.max(log2Size, 1);
+        keys = new long[size];
+        proof = new int[size];
+        disproof = new int[size];
+        work = new int[size];
+        mask = size - 2;  // indice pari della coppia
+    }
+
+    /**
+     * @return true se la posizione è in tabella, i valori sono in lastProof e lastDisproof
+     */
+    boolean lookup(long key) {
+        int index = (int) key & mask;
+        for (int k = index; k < index + 2; k++) {
+            if (work[k] != 0 && keys[k] == key) {
+                lastProof = proof[k];
+                lastDisproof = disproof[k];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void store(long key, int proofNumber, int disproofNumber, long nodes) {
+        int index = (int) key & mask;
+        int slot = keys[index + 1] == key ? index + 1 : index;
+        if (keys[slot] != key && work[index + 1] < work[index])
+            slot = index + 1;
+
+        keys[slot] = key;
+        proof[slot] = proofNumber;
+        disproof[slot] = disproofNumber;
+        work[slot] = (int) Math.max(1, Math.min(nodes, Integer.MAX_VALUE));
+    }
+
+    void clear() {
+        Arrays.fill(work, 0);
+    }
+}
@@ -0,0 +1,64 @@
+package mnkgame.solver;
+
+import mnkgame.MNKBudget;
+import mnkgame.MNKCell;
+import mnkgame.MNKCellState;
+import mnkgame.MNKPlayer;
+import mnkgame.bitboard.BitBoard;
+
+/**
+ * Giocatore che risolve la partita con {@link DfpnSolver}: sulle board piccole gioca
+ * la mossa dimostrata, su quelle più grandi la più promettente della dimostrazione
+ * parziale fatta nel tempo del turno. La tabella resta fra un turno e l'altro, quindi
+ * il lavoro dei turni precedenti non si perde.
+ */
+public class SolverPlayer implements MNKPlayer {
+    private BitBoard board;
+    private DfpnSolver solver;
+    private DfpnSolver.Result lastResult;
+    private int TIMEOUT;
+
+    // 2^22 entry da 20 byte, circa 80MB
+    private static final int TABLE_LOG2_SIZE = 22;
+    private static final boolean DEBUG = false;
+
+    public SolverPlayer() {}
+
+    public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
+        board = new BitBoard(M, N, K);
+        solver = new DfpnSolver(TABLE_LOG2_SIZE);
+        TIMEOUT = timeout_in_secs;
+    }
+
+    public MNKCell selectCell(MNKCell[] freeCells, MNKCell[] movedCells) {
+        MNKBudget budget = MNKBudget.current();
+        long startTime = budget.currentTimeMillis();
+        if (movedCells.length > 0) {
+            MNKCell c = movedCells[movedCells.length - 1]; // Recover the last move from MC
+            board.markCell(c.i, c.j); // Save the last move in the local board
+        }
+
+        long deadline = startTime + (long) (TIMEOUT * 1000 * (90.0 / 100.0));
+        lastResult = solver.solve(board, deadline, budget);
+        int move = solver.getBestMove();
+        if (DEBUG) {
+            System.out.format("risultato %s, proof %d, disproof %d, nodi %d%n", lastResult,
+                    solver.getRootProof(), solver.getRootDisproof(), solver.getNodes());
+        }
+
+        MNKCell cell = MNKCell.valueOf(move / board.N, move % board.N, MNKCellState.FREE);
+        board.markCell(cell.i, cell.j);
+        return cell;
+    }
+
+    /**
+     * @return il valore della partita trovato nell'ultimo turno, per il giocatore
+     */
+    public DfpnSolver.Result getLastResult() {
+        return lastResult;
+    }
+
+    public String playerName() {
+        return "DfpnSolver";
+    }
+}
@@ -0,0 +1,110 @@
+package mnkgame.solver;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import mnkgame.MNKCellState;
+import mnkgame.MNKGameState;
+import mnkgame.bitboard.BitBoard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+public class TestDfpnSolver {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    @Test
+    @DisplayName("Known values of small games")
+    public void testKnownGames() {
+        DfpnSolver solver = new DfpnSolver(16);
+        assert solver.solve(new BitBoard(3, 3, 3), NO_DEADLINE) == DfpnSolver.Result.DRAW;
+        assert solver.solve(new BitBoard(3, 4, 3), NO_DEADLINE) == DfpnSolver.Result.WIN;
+        assert solver.solve(new BitBoard(4, 4, 3), NO_DEADLINE) == DfpnSolver.Result.WIN;
+        assert solver.solve(new BitBoard(4, 4, 4), NO_DEADLINE) == DfpnSolver.Result.DRAW;
+    }
+
+    @Test
+    @DisplayName("The proven move keeps the value and the board is left unchanged")
+    public void testProvenMove() {
+        DfpnSolver solver = new DfpnSolver(16);
+        BitBoard board = new BitBoard(3, 4, 3);
+        assert solver.solve(board, NO_DEADLINE) == DfpnSolver.Result.WIN;
+        assert board.getMarkedCellsCount() == 0;
+
+        int move = solver.getBestMove();
+        board.markCell(move / 4, move % 4);
+        assert solver.solve(board, NO_DEADLINE) == DfpnSolver.Result.LOSS;
+    }
+
+    @Test
+    @DisplayName("Same values of an exact minimax on random positions, even with a tiny table")
+    public void testRandomPositions() {
+        // M, N, K, pietre minime, così il minimax esatto resta veloce
+        int[][] games = {{4, 4, 3, 2}, {4, 4, 4, 5}, {4, 5, 4, 8}};
+        Random rand = new Random(11);
+        for (int[] game : games) {
+            int M = game[0], N = game[1], K = game[2];
+            HashMap<Long, Integer> memo = new HashMap<Long, Integer>();
+            DfpnSolver solver = new DfpnSolver(10);
+            for (int round = 0; round < 30; round++) {
+                BitBoard board = new BitBoard(M, N, K);
+                int stones = game[3] + rand.nextInt(4);
+                while (board.getMarkedCellsCount() < stones && board.gameState() == MNKGameState.OPEN) {
+                    int cell = rand.nextInt(M * N);
+                    if (board.cellState(cell / N, cell % N) == MNKCellState.FREE)
+                        board.markCell(cell / N, cell % N);
+                }
+                if (board.gameState() != MNKGameState.OPEN)
+                    continue;
+
+                int expected = solve(board, memo);
+                DfpnSolver.Result result = solver.solve(board, NO_DEADLINE);
+                assert result == (expected > 0 ? DfpnSolver.Result.WIN
+                        : expected == 0 ? DfpnSolver.Result.DRAW : DfpnSolver.Result.LOSS);
+
+                if (result != DfpnSolver.Result.LOSS) {
+                    int move = solver.getBestMove();
+                    MNKGameState state = board.markCell(move / N, move % N);
+                    int value = state == MNKGameState.OPEN ? -solve(board, memo)
+                            : state == MNKGameState.DRAW ? 0 : 1;
+                    assert value == expected;
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Without time the result is unknown but a move is still returned")
+    public void testDeadline() {
+        DfpnSolver solver = new DfpnSolver(16);
+        BitBoard board = new BitBoard(7, 7, 5);
+        assert solver.solve(board, System.currentTimeMillis() + 50) == DfpnSolver.Result.UNKNOWN;
+        assert solver.getBestMove() >= 0 && solver.getBestMove() < 49;
+        assert solver.getRootProof() > 0 && solver.getRootDisproof() > 0;
+        assert board.getMarkedCellsCount() == 0;
+    }
+
+    // valore esatto per il giocatore di turno: 1 vince, 0 pareggio, -1 perde
+    private int solve(BitBoard board, HashMap<Long, Integer> memo) {
+        Integer known = memo.get(board.hash());
+        if (known != null)
+            return known;
+
+        int best = -1;
+        for (int cell = 0; cell < board.M * board.N && best < 1; cell++) {
+            if (board.cellState(cell / board.N, cell % board.N) != MNKCellState.FREE)
+                continue;
+            MNKGameState state = board.markCell(cell / board.N, cell % board.N);
+            int value;
+            if (state == MNKGameState.DRAW)
+                value = 0;
+            else if (state != MNKGameState.OPEN)
+                value = 1;
+            else
+                value = -solve(board, memo);
+            board.unmarkCell();
+            best = Math.max(best, value);
+        }
+        memo.put(board.hash(), best);
+        return best;
+    }
+}
@@ -3,6 +3,7 @@ package mnkgame.timevecchio;
 import mnkgame.MNKCell;
 import mnkgame.MNKCellState;
 import mnkgame.MNKGameState;
+import MarkcelloPlayer.MoveOrdering;
 
 
 /**
@@ -27,6 +28,10 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
     // mosse del tree attuale
     private int movesCurrentTree;
 
+    // killer e history sopra l'ordine dell'euristica, con un buffer di figli per profondità
+    private MoveOrdering ordering;
+    private int[][] moveBuffer;
+
 
     private final boolean DEBUG = false;
 
@@ -66,6 +71,8 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
         this.maxMovesCurrentTree = 0;
         this.movesCurrentTree = 0;
 
+        this.ordering = new MoveOrdering(M * N, M * N + 1);
+        this.moveBuffer = new int[M * N + 1][BRANCHING_FACTOR];
     }
 
     public int minPlayer(int depth, int alpha, int beta) {
@@ -82,7 +89,8 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
         
         int v = KINF;
         
-        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
+        int[] moves = moveBuffer[depth];
+        int len = generateMoves(depth);
         
         for (int i = 0; i < len; i++) {
             if (movesCurrentTree + depth >= maxMovesCurrentTree) {
@@ -90,7 +98,7 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
                 
             }
 
-            gameState = B.markCell(B.getGreatKCell(i));
+            gameState = B.markCell(moves[i] / N, moves[i] % N);
             int maxPlayerValue = maxPlayer(depth + 1, alpha, beta);
             B.unmarkCell();
             movesCurrentTree++;
@@ -100,9 +108,10 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
                 beta = Math.min(beta, v);
             }
 
-            // TODO: sarebbe buono provare a fare una ordering, sul principio della late move reduction.
-            if (v <= alpha)
+            if (v <= alpha) {
+                ordering.cutoff(depth, moves[i], i, DEPTH_LIMIT - depth);
                 return v;
+            }
         }
         
         if(v == KINF){
@@ -124,14 +133,15 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
 
         int v = -KINF;
         
-        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
+        int[] moves = moveBuffer[depth];
+        int len = generateMoves(depth);
         
         for (int i = 0; i < len; i++) {
             if (movesCurrentTree + depth >= maxMovesCurrentTree) {
                 throw new RuntimeException("max moves reached");
             }
 
-            gameState = B.markCell(B.getGreatKCell(i));
+            gameState = B.markCell(moves[i] / N, moves[i] % N);
             int minPlayerValue = minPlayer(depth + 1, alpha, beta);
             B.unmarkCell();
             
@@ -143,8 +153,10 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
                 alpha = Math.max(alpha, v);
             }
 
-            if (v >= beta)
+            if (v >= beta) {
+                ordering.cutoff(depth, moves[i], i, DEPTH_LIMIT - depth);
                 return v;
+            }
         }
 
         if(v == -KINF) {
@@ -154,6 +166,21 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
         return v;
     }
 
+    /**
+     * Mette in moveBuffer[depth] le celle migliori secondo l'euristica, riordinate con killer e history
+     * @return numero di mosse
+     */
+    private int generateMoves(int depth) {
+        int[] moves = moveBuffer[depth];
+        int len = Math.min(BRANCHING_FACTOR, B.getFreeCellsCount());
+        for (int i = 0; i < len; i++) {
+            IHeuristicCell cell = B.getGreatKCell(i);
+            moves[i] = cell.getI() * N + cell.getJ();
+        }
+        ordering.order(depth, MoveOrdering.NO_MOVE, moves, len);
+        return len;
+    }
+
   
 
     /**
@@ -173,6 +200,8 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
         maxMovesCurrentTree = maxNumberOfMoves / 4;
         B.setBranchingFactor(len);
         B.updateCellDataStruct();
+        ordering.newSearch();
+        ordering.resetStats();
 
         int toAddEachStep;
         if (len <= 1)
@@ -210,6 +239,11 @@ public class TrierPlayer implements mnkgame.MNKPlayer {
             
             maxMovesCurrentTree = (maxMovesCurrentTree - movesCurrentTree) + toAddEachStep;
         }
+
+        if (DEBUG) {
+            System.out.format("tagli: %d, alla prima mossa: %.1f%%\n",
+                    ordering.getCutoffs(), 100 * ordering.getFirstMoveCutoffRate());
+        }
         return cell;
     }    
 
@@ -1,15 +1,17 @@
 package relazione;
 
-import mnkgame.CBoard;
+import mnkgame.cboard.CBoard;
+import mnkgame.bitboard.BitBoard;
 import java.util.ArrayList;
 import java.util.Collections;
 // questo file si prefissa di fare l'analisi sperimentale alle due board
-// CBoard per valutarne l'efficienza effettiva
+// CBoard (e la BitBoard) per valutarne l'efficienza effettiva
 
 public class analisiBoard {
     private static int numeroGiochi = 1000;
     private static MNKBoard mnkBoard;
     private static CBoard cBoard;
+    private static BitBoard bitBoard;
     private static boolean hasToRemove = false;
     private static final int K = 100;  // possederà un valore alto, in modo che il gioco non finisca mai
     private static final int[][] giochi = {
@@ -65,6 +67,18 @@ public class analisiBoard {
         }
     }
 
+    public static void markCellBitBoard(ArrayList<int[]> actions) {
+        for (int[] action : actions) {
+            bitBoard.markCell(action[0], action[1]);
+        }
+
+        if (hasToRemove) {
+            for (int i = 0; i < actions.size(); i++) {
+                bitBoard.unmarkCell();
+            }
+        }
+    }
+
     public static void analize() {
         for (int[] giochio : giochi) {
             int m = giochio[0];
@@ -73,10 +87,12 @@ public class analisiBoard {
 
             long timeMNK = 0;
             long timeC = 0;
+            long timeBit = 0;
 
             for (int i = 0; i < numeroGiochi; i++) {
                 mnkBoard = new MNKBoard(m, n, K);
                 cBoard = new CBoard(m, n, K);
+                bitBoard = new BitBoard(m, n, K);
                 ArrayList<int[]> actions = getAllCells(m, n);
                 Collections.shuffle(actions);
                 long startMNK = System.nanoTime();
@@ -85,10 +101,17 @@ public class analisiBoard {
                 long startC = System.nanoTime();
                 markCellCBoard(actions);
                 timeC += System.nanoTime() - startC;
+                long startBit = System.nanoTime();
+                markCellBitBoard(actions);
+                timeBit += System.nanoTime() - startBit;
             }
             System.out.println("timeMNK = " + timeMNK / 1000000 + " ms");
             System.out.println("timeC = " + timeC  / 1000000 + " ms");
+            System.out.println("timeBit = " + timeBit  / 1000000 + " ms");
             System.out.println("timeMNK / timeC = " + (double)timeMNK / timeC + " ns");
+            System.out.println("timeMNK / timeBit = " + (double)timeMNK / timeBit + " ns");
+            // una coppia mark/unmark per ogni cella di ogni gioco
+            System.out.println("bit mark/unmark al secondo = " + (long) (numeroGiochi * (double) m * n / (timeBit / 1e9)));
         }
     }
 
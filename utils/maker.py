@@ -264,45 +264,19 @@ def format_output(string: str):
 def play_all(args):
     """
     Esegue tutte le partite simulando un test del prof.
+    Le partite girano in parallelo con mnkgame.MNKTournament, una sola JVM per tutte
+    le board, e ogni giocatore gioca sia da primo che da secondo.
     """
-
-
-    # overwrite existings args, so that is default
-    args.rounds = 1
-    args.time = 10 
-    args.verbose = False
-
-    player1_result = Output((0, 0, 0, 0, 0))
-    player2_result = Output((0, 0, 0, 0, 0))
+    player1 = name_to_classname(args.player1)
+    player2 = name_to_classname(args.player2)
+    games = " ".join(f"-g {m},{n},{k}" for m, n, k in all_games)
+    command = f"java -cp build mnkgame.MNKTournament -t 10 -r 1 {games} {player1} {player2}"
 
     print(f"simulating prof. play between {args.player1} and {args.player2}")
-    for game in all_games:
-        print("playing on the board:", game)
-        args.board = game
-        command = make_command(args)
-
-        # splitta per \r\n on win e \n on linux, ritorna l'output del comando eseguito nel sottoprocesso
-        out = subprocess.run(command.split(), capture_output=True).stdout.decode().strip().split(os.linesep)
-
-        player1_result += Output(format_output(out[0]))
-        player2_result += Output(format_output(out[1]))
-        print(player1_result)
-        print(player2_result)
-
-        # swap players
-        args.player1, args.player2 = args.player2, args.player1
-        command = make_command(args)
-        out = subprocess.run(command.split(), capture_output=True).stdout.decode().strip().split(os.linesep)
-
-        player1_result += Output(format_output(out[1]))
-        player2_result += Output(format_output(out[0]))
-        print(player1_result)
-        print(player2_result)
-
-        args.player1, args.player2 = args.player2, args.player1
+    out = subprocess.run(command.split(), capture_output=True).stdout.decode().strip().split(os.linesep)
 
-    print(f"player 1 final score: {player1_result}")
-    print(f"player 2 final score: {player2_result}")
+    print(f"player 1 final score: {Output(format_output(out[0]))}")
+    print(f"player 2 final score: {Output(format_output(out[1]))}")
 
 if __name__ == "__main__":
     main()
\ No newline at end of file